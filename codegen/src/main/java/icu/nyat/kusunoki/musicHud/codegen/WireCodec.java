@@ -0,0 +1,25 @@
+package icu.nyat.kusunoki.musicHud.codegen;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a {@code <Bean>Codec} class with static {@code write}, {@code read} and
+ * {@code sizeOf} methods for a bean whose wire fields are marked with {@link WireField}.
+ * <p>
+ * The bean needs an accessor for every wire field and a constructor that takes
+ * the wire fields in wire order; the decoder calls it directly.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface WireCodec {
+    /**
+     * Name of a PacketCodecs pair, {@code write<Name>(ByteBuf, T, boolean withOptional)} and
+     * {@code sizeOf<Name>(T, boolean withOptional)}, that other beans encode this one through
+     * instead of its generated codec, e.g. to reuse cached encodings. Without optional fields the
+     * pair takes no flag. Empty to call the generated codec directly.
+     */
+    String nestedVia() default "";
+}
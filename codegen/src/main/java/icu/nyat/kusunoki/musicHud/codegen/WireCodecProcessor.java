@@ -0,0 +1,420 @@
+package icu.nyat.kusunoki.musicHud.codegen;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates straight-line codecs for {@link WireCodec} beans.
+ * <p>
+ * Every wire field becomes one call into PacketCodecs' primitive writers, in field order,
+ * with no reflection or per-field dispatch at runtime. The layout is checked at compile
+ * time: positions must be contiguous and the bean must have a constructor taking the wire
+ * fields in order, so a new or reordered field fails the build instead of the protocol.
+ */
+@SupportedAnnotationTypes("icu.nyat.kusunoki.musicHud.codegen.WireCodec")
+public class WireCodecProcessor extends AbstractProcessor {
+    private static final String CODEC_PACKAGE = "icu.nyat.kusunoki.musicHud.network.codec";
+    private static final String PRIMITIVES = "icu.nyat.kusunoki.musicHud.network.PacketCodecs";
+    private static final String BYTE_BUF = "io.netty.buffer.ByteBuf";
+
+    private final Map<TypeElement, List<Property>> models = new HashMap<>();
+    private final Map<TypeElement, Boolean> optional = new HashMap<>();
+    private boolean failed;
+
+    private enum Kind {
+        LONG, INT, BOOLEAN, STRING, UUID, ENUM, STRING_LIST, BEAN, BEAN_LIST
+    }
+
+    private record Property(VariableElement field, String accessor, Kind kind, TypeMirror type,
+                            TypeElement bean, boolean truncate, String omitAs) {
+        String name() {
+            return field.getSimpleName().toString();
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        List<TypeElement> beans = new ArrayList<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(WireCodec.class)) {
+            if (element instanceof TypeElement type) {
+                beans.add(type);
+            }
+        }
+        for (TypeElement bean : beans) {
+            model(bean);
+        }
+        if (failed) {
+            return true;
+        }
+        for (TypeElement bean : beans) {
+            generate(bean);
+        }
+        return true;
+    }
+
+    // ==================== Model ====================
+
+    private List<Property> model(TypeElement bean) {
+        List<Property> cached = models.get(bean);
+        if (cached != null) {
+            return cached;
+        }
+        List<Property> properties = new ArrayList<>();
+        Map<Integer, VariableElement> positions = new TreeMap<>();
+        for (VariableElement field : ElementFilter.fieldsIn(bean.getEnclosedElements())) {
+            WireField wire = field.getAnnotation(WireField.class);
+            if (wire == null || field.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            VariableElement previous = positions.put(wire.value(), field);
+            if (previous != null) {
+                error(field, "Wire position " + wire.value() + " is also used by " + previous.getSimpleName());
+                continue;
+            }
+            Property property = property(bean, field, wire);
+            if (property != null) {
+                properties.add(property);
+            }
+        }
+        int expected = 0;
+        for (int position : positions.keySet()) {
+            if (position != expected) {
+                error(bean, "Wire positions must run from 0 without gaps; missing " + expected);
+                break;
+            }
+            expected++;
+        }
+        properties.sort(Comparator.comparingInt(p -> p.field().getAnnotation(WireField.class).value()));
+        checkConstructor(bean, properties);
+        models.put(bean, properties);
+        return properties;
+    }
+
+    private Property property(TypeElement bean, VariableElement field, WireField wire) {
+        TypeMirror type = field.asType();
+        Kind kind;
+        TypeElement nested = null;
+        switch (type.getKind()) {
+            case LONG -> kind = Kind.LONG;
+            case INT -> kind = Kind.INT;
+            case BOOLEAN -> kind = Kind.BOOLEAN;
+            case DECLARED -> {
+                TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+                String name = element.getQualifiedName().toString();
+                if (name.equals("java.lang.String")) {
+                    kind = Kind.STRING;
+                } else if (name.equals("java.util.UUID")) {
+                    kind = Kind.UUID;
+                } else if (element.getKind() == ElementKind.ENUM) {
+                    kind = Kind.ENUM;
+                } else if (element.getAnnotation(WireCodec.class) != null) {
+                    kind = Kind.BEAN;
+                    nested = element;
+                } else if (name.equals("java.util.List") && ((DeclaredType) type).getTypeArguments().size() == 1) {
+                    TypeMirror argument = ((DeclaredType) type).getTypeArguments().get(0);
+                    TypeElement elementType = argument.getKind() == TypeKind.DECLARED
+                            ? (TypeElement) ((DeclaredType) argument).asElement() : null;
+                    if (elementType != null && elementType.getQualifiedName().contentEquals("java.lang.String")) {
+                        kind = Kind.STRING_LIST;
+                    } else if (elementType != null && elementType.getAnnotation(WireCodec.class) != null) {
+                        kind = Kind.BEAN_LIST;
+                        nested = elementType;
+                    } else {
+                        error(field, "Unsupported list element type " + argument);
+                        return null;
+                    }
+                } else {
+                    error(field, "Unsupported wire type " + type + "; annotate it with @WireCodec");
+                    return null;
+                }
+            }
+            default -> {
+                error(field, "Unsupported wire type " + type);
+                return null;
+            }
+        }
+        if (wire.truncate() && kind != Kind.STRING) {
+            error(field, "Only strings can be truncated");
+        }
+        String accessor = accessor(bean, field);
+        if (accessor == null) {
+            error(field, "No accessor for wire field " + field.getSimpleName());
+            return null;
+        }
+        return new Property(field, accessor, kind, type, nested, wire.truncate(), wire.omitAs());
+    }
+
+    private String accessor(TypeElement bean, VariableElement field) {
+        String name = field.getSimpleName().toString();
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        Set<String> candidates = bean.getKind() == ElementKind.RECORD
+                ? Set.of(name)
+                : Set.of("get" + capitalized, "is" + capitalized);
+        Types types = processingEnv.getTypeUtils();
+        for (ExecutableElement method : ElementFilter.methodsIn(bean.getEnclosedElements())) {
+            if (candidates.contains(method.getSimpleName().toString())
+                    && method.getParameters().isEmpty()
+                    && !method.getModifiers().contains(Modifier.STATIC)
+                    && types.isSameType(types.erasure(method.getReturnType()), types.erasure(field.asType()))) {
+                return method.getSimpleName().toString();
+            }
+        }
+        return null;
+    }
+
+    private void checkConstructor(TypeElement bean, List<Property> properties) {
+        Types types = processingEnv.getTypeUtils();
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(bean.getEnclosedElements())) {
+            List<? extends VariableElement> parameters = constructor.getParameters();
+            if (constructor.getModifiers().contains(Modifier.PRIVATE) || parameters.size() != properties.size()) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < parameters.size() && matches; i++) {
+                matches = types.isSameType(types.erasure(parameters.get(i).asType()),
+                        types.erasure(properties.get(i).type()));
+            }
+            if (matches) {
+                return;
+            }
+        }
+        error(bean, "A constructor taking the wire fields in wire order is required for decoding");
+    }
+
+    /**
+     * Whether the bean, or a bean nested in it, has a field that can be omitted.
+     */
+    private boolean hasOptional(TypeElement bean) {
+        Boolean known = optional.get(bean);
+        if (known != null) {
+            return known;
+        }
+        // Guard against cycles while this bean is being resolved
+        optional.put(bean, false);
+        boolean result = false;
+        for (Property property : model(bean)) {
+            if (!property.omitAs().isEmpty() || (property.bean() != null && hasOptional(property.bean()))) {
+                result = true;
+            }
+        }
+        optional.put(bean, result);
+        return result;
+    }
+
+    // ==================== Generation ====================
+
+    private void generate(TypeElement bean) {
+        String beanName = bean.getQualifiedName().toString();
+        String codecName = codecName(bean);
+        boolean hasOptional = hasOptional(bean);
+        List<Property> properties = models.get(bean);
+        String omitParameter = hasOptional ? ", boolean omitOptional" : "";
+
+        StringBuilder out = new StringBuilder();
+        out.append("package ").append(CODEC_PACKAGE).append(";\n\n");
+        out.append("/**\n");
+        out.append(" * Wire codec for {@link ").append(beanName).append("}, generated from its @WireField order.\n");
+        out.append(" */\n");
+        out.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n");
+        out.append("public final class ").append(codecName).append(" {\n");
+        out.append("    private ").append(codecName).append("() {\n    }\n");
+
+        if (hasOptional) {
+            out.append("\n    public static void write(").append(BYTE_BUF).append(" buf, ").append(beanName).append(" value) {\n");
+            out.append("        write(buf, value, false);\n    }\n");
+        }
+        out.append("\n    public static void write(").append(BYTE_BUF).append(" buf, ").append(beanName).append(" value")
+                .append(omitParameter).append(") {\n");
+        for (Property property : properties) {
+            writeStatement(out, property);
+        }
+        out.append("    }\n");
+
+        out.append("\n    public static ").append(beanName).append(" read(").append(BYTE_BUF).append(" buf) {\n");
+        out.append("        return new ").append(beanName).append("(");
+        for (int i = 0; i < properties.size(); i++) {
+            out.append(i == 0 ? "\n" : ",\n").append("                ").append(readExpression(properties.get(i)));
+        }
+        out.append("\n        );\n    }\n");
+
+        if (hasOptional) {
+            out.append("\n    public static int sizeOf(").append(beanName).append(" value) {\n");
+            out.append("        return sizeOf(value, false);\n    }\n");
+        }
+        out.append("\n    /**\n     * Exact encoded size, used to allocate output buffers once.\n     */\n");
+        out.append("    public static int sizeOf(").append(beanName).append(" value").append(omitParameter).append(") {\n");
+        int fixed = 0;
+        StringBuilder variable = new StringBuilder();
+        for (Property property : properties) {
+            fixed += sizeStatement(variable, property);
+        }
+        out.append("        int size = ").append(fixed).append(";\n");
+        out.append(variable);
+        out.append("        return size;\n    }\n");
+
+        for (Property property : properties) {
+            if (property.kind() == Kind.BEAN_LIST) {
+                String element = property.bean().getQualifiedName().toString();
+                out.append("\n    private static java.util.List<").append(element).append("> read")
+                        .append(capitalize(property.name())).append("(").append(BYTE_BUF).append(" buf) {\n");
+                out.append("        int count = ").append(PRIMITIVES).append(".readInt(buf);\n");
+                out.append("        java.util.List<").append(element).append("> list = new java.util.ArrayList<>(count);\n");
+                out.append("        for (int i = 0; i < count; i++) {\n");
+                out.append("            list.add(").append(codecName(property.bean())).append(".read(buf));\n");
+                out.append("        }\n        return list;\n    }\n");
+            }
+        }
+        out.append("}\n");
+
+        try (Writer writer = processingEnv.getFiler()
+                .createSourceFile(CODEC_PACKAGE + "." + codecName, bean).openWriter()) {
+            writer.write(out.toString());
+        } catch (IOException e) {
+            error(bean, "Could not write " + codecName + ": " + e.getMessage());
+        }
+    }
+
+    private String valueExpression(Property property) {
+        String value = "value." + property.accessor() + "()";
+        if (!property.omitAs().isEmpty()) {
+            String type = processingEnv.getTypeUtils().erasure(property.type()).toString();
+            value = "(omitOptional ? " + type + "." + property.omitAs() + " : " + value + ")";
+        }
+        if (property.truncate()) {
+            value = PRIMITIVES + ".fitString(" + value + ")";
+        }
+        return value;
+    }
+
+    private String nestedOmit(Property property) {
+        return hasOptional(property.bean()) ? ", omitOptional" : "";
+    }
+
+    /**
+     * Statement writing a nested bean, through its {@link WireCodec#nestedVia()} pair if it has one.
+     */
+    private String nestedWrite(Property property, String value) {
+        String via = property.bean().getAnnotation(WireCodec.class).nestedVia();
+        if (via.isEmpty()) {
+            return codecName(property.bean()) + ".write(buf, " + value + nestedOmit(property) + ");";
+        }
+        String flag = hasOptional(property.bean()) ? ", !omitOptional" : "";
+        return PRIMITIVES + ".write" + via + "(buf, " + value + flag + ");";
+    }
+
+    private String nestedSize(Property property, String value) {
+        String via = property.bean().getAnnotation(WireCodec.class).nestedVia();
+        if (via.isEmpty()) {
+            return codecName(property.bean()) + ".sizeOf(" + value + nestedOmit(property) + ")";
+        }
+        String flag = hasOptional(property.bean()) ? ", !omitOptional" : "";
+        return PRIMITIVES + ".sizeOf" + via + "(" + value + flag + ")";
+    }
+
+    private void writeStatement(StringBuilder out, Property property) {
+        String value = valueExpression(property);
+        String indent = "        ";
+        switch (property.kind()) {
+            case LONG -> out.append(indent).append(PRIMITIVES).append(".writeLong(buf, ").append(value).append(");\n");
+            case INT -> out.append(indent).append(PRIMITIVES).append(".writeInt(buf, ").append(value).append(");\n");
+            case BOOLEAN -> out.append(indent).append(PRIMITIVES).append(".writeBoolean(buf, ").append(value).append(");\n");
+            case STRING -> out.append(indent).append(PRIMITIVES).append(".writeString(buf, ").append(value).append(");\n");
+            case UUID -> out.append(indent).append(PRIMITIVES).append(".writeUUID(buf, ").append(value).append(");\n");
+            case ENUM -> out.append(indent).append(PRIMITIVES).append(".writeEnum(buf, ").append(value).append(");\n");
+            case STRING_LIST -> out.append(indent).append(PRIMITIVES).append(".writeStringList(buf, ").append(value).append(");\n");
+            case BEAN -> out.append(indent).append(nestedWrite(property, value)).append("\n");
+            case BEAN_LIST -> {
+                String element = property.bean().getQualifiedName().toString();
+                String local = property.name();
+                out.append(indent).append("java.util.List<").append(element).append("> ").append(local)
+                        .append(" = ").append(value).append(";\n");
+                out.append(indent).append(PRIMITIVES).append(".writeInt(buf, ").append(local).append(".size());\n");
+                out.append(indent).append("for (").append(element).append(" element : ").append(local).append(") {\n");
+                out.append(indent).append("    ").append(nestedWrite(property, "element")).append("\n");
+                out.append(indent).append("}\n");
+            }
+        }
+    }
+
+    private String readExpression(Property property) {
+        return switch (property.kind()) {
+            case LONG -> PRIMITIVES + ".readLong(buf)";
+            case INT -> PRIMITIVES + ".readInt(buf)";
+            case BOOLEAN -> PRIMITIVES + ".readBoolean(buf)";
+            case STRING -> PRIMITIVES + ".readString(buf)";
+            case UUID -> PRIMITIVES + ".readUUID(buf)";
+            case ENUM -> PRIMITIVES + ".readEnum(buf, "
+                    + processingEnv.getTypeUtils().erasure(property.type()) + ".class)";
+            case STRING_LIST -> PRIMITIVES + ".readStringList(buf)";
+            case BEAN -> codecName(property.bean()) + ".read(buf)";
+            case BEAN_LIST -> "read" + capitalize(property.name()) + "(buf)";
+        };
+    }
+
+    /**
+     * Append the size of a variable-length field, or return the size of a fixed-length one.
+     */
+    private int sizeStatement(StringBuilder out, Property property) {
+        String value = valueExpression(property);
+        String indent = "        ";
+        switch (property.kind()) {
+            case LONG:
+                return Long.BYTES;
+            case INT:
+                return Integer.BYTES;
+            case BOOLEAN:
+                return 1;
+            case UUID:
+                return 2 * Long.BYTES;
+            case STRING:
+                out.append(indent).append("size += ").append(PRIMITIVES).append(".sizeOfString(").append(value).append(");\n");
+                return 0;
+            case ENUM:
+                out.append(indent).append("size += ").append(PRIMITIVES).append(".sizeOfEnum(").append(value).append(");\n");
+                return 0;
+            case STRING_LIST:
+                out.append(indent).append("size += ").append(PRIMITIVES).append(".sizeOfStringList(").append(value).append(");\n");
+                return 0;
+            case BEAN:
+                out.append(indent).append("size += ").append(nestedSize(property, value)).append(";\n");
+                return 0;
+            case BEAN_LIST:
+            default:
+                String element = property.bean().getQualifiedName().toString();
+                out.append(indent).append("for (").append(element).append(" element : ").append(value).append(") {\n");
+                out.append(indent).append("    size += ").append(nestedSize(property, "element")).append(";\n");
+                out.append(indent).append("}\n");
+                return Integer.BYTES;
+        }
+    }
+
+    private static String codecName(TypeElement bean) {
+        return bean.getSimpleName() + "Codec";
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private void error(Element element, String message) {
+        failed = true;
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
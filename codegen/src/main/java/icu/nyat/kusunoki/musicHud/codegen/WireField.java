@@ -0,0 +1,27 @@
+package icu.nyat.kusunoki.musicHud.codegen;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Position of a field in the wire layout of a {@link WireCodec} bean.
+ * Positions must run from 0 without gaps; fields without this annotation are not sent.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface WireField {
+    int value();
+
+    /**
+     * For strings: cut the value down to the codec's string limit instead of failing the packet.
+     */
+    boolean truncate() default false;
+
+    /**
+     * Name of a static constant of the field's type that is written instead of the value
+     * when a caller asks to omit optional data, e.g. lyrics of tracks that are not playing.
+     */
+    String omitAs() default "";
+}
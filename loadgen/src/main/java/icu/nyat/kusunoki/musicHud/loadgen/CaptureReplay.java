@@ -0,0 +1,125 @@
+package icu.nyat.kusunoki.musicHud.loadgen;
+
+import icu.nyat.kusunoki.musicHud.MusicHud;
+import icu.nyat.kusunoki.musicHud.network.PacketType;
+import icu.nyat.kusunoki.musicHud.network.TrafficCapture;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Feeds the inbound messages of a {@code /musichud capture dump} file back through the plugin's
+ * ChannelHandler on a mock server, at the original pace or faster, and compares the messages
+ * sent back with the ones in the capture.
+ * <p>
+ * Usage: {@code CAPTURE_FILE [--speed FACTOR] [--api-delay MILLIS]}; a speed of 0 replays
+ * without waiting. API calls are answered by the stub API, so response contents differ from
+ * production while message counts and the work done per message stay comparable.
+ */
+public final class CaptureReplay {
+    private CaptureReplay() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: CAPTURE_FILE [--speed FACTOR] [--api-delay MILLIS]");
+            System.exit(1);
+        }
+        Path file = Path.of(args[0]);
+        double speed = 1.0;
+        long apiDelay = 20;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--speed" -> speed = Double.parseDouble(args[i + 1]);
+                case "--api-delay" -> apiDelay = Long.parseLong(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        List<TrafficCapture.CapturedFrame> frames = TrafficCapture.read(file);
+        StubApiServer api = StubApiServer.start(apiDelay);
+        ServerMock server = MockBukkit.mock();
+        try {
+            MusicHud plugin = LoadGenerator.loadPlugin(api);
+            LoadReport report = new LoadReport();
+            Map<UUID, SimulatedClient> clients = new HashMap<>();
+            Map<PacketType, long[]> captured = new EnumMap<>(PacketType.class);
+            int inbound = 0;
+            for (TrafficCapture.CapturedFrame frame : frames) {
+                clients.computeIfAbsent(frame.playerId(), id -> {
+                    SimulatedClient client = new SimulatedClient(server, plugin, report, frame.playerName(), id);
+                    server.addPlayer(client);
+                    return client;
+                });
+                if (frame.outbound()) {
+                    long[] totals = captured.computeIfAbsent(frame.type(), t -> new long[2]);
+                    totals[0]++;
+                    totals[1] += frame.data().length;
+                } else {
+                    inbound++;
+                }
+            }
+
+            AtomicBoolean feeding = new AtomicBoolean(true);
+            double pace = speed;
+            long start = System.nanoTime();
+            Thread feeder = Thread.ofVirtual().start(() -> {
+                try {
+                    for (TrafficCapture.CapturedFrame frame : frames) {
+                        if (frame.outbound()) {
+                            continue;
+                        }
+                        if (pace > 0) {
+                            long due = start + (long) (frame.nanos() / pace);
+                            long wait = due - System.nanoTime();
+                            if (wait > 0) {
+                                TimeUnit.NANOSECONDS.sleep(wait);
+                            }
+                        }
+                        clients.get(frame.playerId()).replay(frame.type(), frame.data());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    feeding.set(false);
+                }
+            });
+
+            long[] drainUntil = {Long.MAX_VALUE};
+            LoadGenerator.runTicks(server, () -> {
+                if (feeding.get()) {
+                    return true;
+                }
+                if (drainUntil[0] == Long.MAX_VALUE) {
+                    drainUntil[0] = System.nanoTime() + LoadGenerator.DRAIN_NANOS;
+                }
+                return System.nanoTime() - drainUntil[0] < 0;
+            });
+            feeder.join();
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Replayed %d inbound messages from %d players in %.1f s (%.0f msg/s)%n%n",
+                    inbound, clients.size(), seconds, inbound / seconds);
+            System.out.printf("%-30s %10s %10s %12s %12s%n", "outbound", "captured", "replayed", "captured KiB", "replayed KiB");
+            for (PacketType type : PacketType.values()) {
+                long[] totals = captured.getOrDefault(type, new long[2]);
+                long replayed = report.getReceivedMessages(type);
+                if (totals[0] > 0 || replayed > 0) {
+                    System.out.printf("%-30s %10d %10d %12d %12d%n", type.name(), totals[0], replayed,
+                            totals[1] / 1024, report.getReceivedBytes(type) / 1024);
+                }
+            }
+        } finally {
+            MockBukkit.unmock();
+            api.stop();
+        }
+    }
+}
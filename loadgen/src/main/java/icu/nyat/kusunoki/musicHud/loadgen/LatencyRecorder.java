@@ -0,0 +1,56 @@
+package icu.nyat.kusunoki.musicHud.loadgen;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples of one operation for percentile reporting.
+ */
+final class LatencyRecorder {
+    private long[] samples = new long[1024];
+    private int count;
+    private long sent;
+    private long expired;
+
+    synchronized void onSent() {
+        sent++;
+    }
+
+    /**
+     * A request that got no matching response in time, e.g. rate limited or a duplicate push.
+     */
+    synchronized void onExpired() {
+        expired++;
+    }
+
+    synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    synchronized long getSent() {
+        return sent;
+    }
+
+    synchronized int getCompleted() {
+        return count;
+    }
+
+    synchronized long getExpired() {
+        return expired;
+    }
+
+    /**
+     * Latency in milliseconds at the given percentile (0-100), or 0 without samples.
+     */
+    synchronized double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,153 @@
+package icu.nyat.kusunoki.musicHud.loadgen;
+
+import icu.nyat.kusunoki.musicHud.MusicHud;
+import icu.nyat.kusunoki.musicHud.beans.MusicDetail;
+import icu.nyat.kusunoki.musicHud.beans.Version;
+import icu.nyat.kusunoki.musicHud.network.ClientCapability;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs the plugin on a mock server against a stub API and drives thousands of simulated
+ * clients through connect, search, push and vote traffic, then reports throughput and
+ * latency percentiles.
+ * <p>
+ * Options: {@code --clients N} (default 1000), {@code --duration SECONDS} (60),
+ * {@code --rate OPS_PER_CLIENT_PER_SECOND} (0.2), {@code --api-delay MILLIS} (20),
+ * {@code --client-version MAJOR.MINOR.PATCH} (the plugin's own version),
+ * {@code --capabilities NAME,NAME,...} advertised by every client (all of them; {@code none} for a baseline client).
+ */
+public final class LoadGenerator {
+    private static final long TICK_NANOS = 50_000_000L;
+    // Time left after the last request for responses still in flight
+    static final long DRAIN_NANOS = 3_000_000_000L;
+    private static final String[] QUERIES = {"love", "night", "rain", "summer", "夜曲", "晴天", "海阔天空", "stay"};
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = 1000;
+        int durationSeconds = 60;
+        double rate = 0.2;
+        long apiDelay = 20;
+        Version clientVersion = Version.CURRENT;
+        Set<ClientCapability> capabilities = EnumSet.allOf(ClientCapability.class);
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--clients" -> clients = Integer.parseInt(args[i + 1]);
+                case "--duration" -> durationSeconds = Integer.parseInt(args[i + 1]);
+                case "--rate" -> rate = Double.parseDouble(args[i + 1]);
+                case "--api-delay" -> apiDelay = Long.parseLong(args[i + 1]);
+                case "--client-version" -> {
+                    String[] parts = args[i + 1].split("\\.");
+                    clientVersion = new Version(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                            Long.parseLong(parts[2]), Version.BuildType.STABLE);
+                }
+                case "--capabilities" -> {
+                    capabilities = EnumSet.noneOf(ClientCapability.class);
+                    if (!args[i + 1].equalsIgnoreCase("none")) {
+                        for (String name : args[i + 1].split(",")) {
+                            capabilities.add(ClientCapability.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+                        }
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        StubApiServer api = StubApiServer.start(apiDelay);
+        ServerMock server = MockBukkit.mock();
+        try {
+            MusicHud plugin = loadPlugin(api);
+
+            LoadReport report = new LoadReport();
+            List<SimulatedClient> population = new ArrayList<>(clients);
+            for (int i = 0; i < clients; i++) {
+                SimulatedClient client = new SimulatedClient(server, plugin, report, i);
+                server.addPlayer(client);
+                population.add(client);
+            }
+
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+            ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+            for (SimulatedClient client : population) {
+                Version version = clientVersion;
+                Set<ClientCapability> advertised = capabilities;
+                double opsPerSecond = rate;
+                workers.execute(() -> runClient(plugin, client, version, advertised, opsPerSecond, end));
+            }
+
+            runTicks(server, () -> System.nanoTime() - (end + DRAIN_NANOS) < 0);
+            workers.shutdownNow();
+
+            report.print(System.out, plugin, clients, (System.nanoTime() - start) / 1e9);
+        } finally {
+            MockBukkit.unmock();
+            api.stop();
+        }
+    }
+
+    /**
+     * Enable the plugin on the mocked server, talking to the stub API.
+     */
+    static MusicHud loadPlugin(StubApiServer api) {
+        MusicHud plugin = MockBukkit.load(MusicHud.class);
+        plugin.getConfig().set("api.base-url", api.baseUrl());
+        plugin.getPluginConfig().reload();
+        return plugin;
+    }
+
+    /**
+     * Act as the mock server's main thread, running scheduler tasks such as the outbound
+     * dispatcher every 50 ms while {@code running} holds.
+     */
+    static void runTicks(ServerMock server, BooleanSupplier running) throws InterruptedException {
+        long nextTick = System.nanoTime();
+        while (running.getAsBoolean()) {
+            server.getScheduler().performOneTick();
+            nextTick += TICK_NANOS;
+            long sleep = nextTick - System.nanoTime();
+            if (sleep > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleep);
+            }
+        }
+    }
+
+    private static void runClient(MusicHud plugin, SimulatedClient client, Version version,
+                                  Set<ClientCapability> capabilities, double rate, long end) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            // Spread the initial connects over the first second, like players joining after a restart
+            TimeUnit.MILLISECONDS.sleep(random.nextLong(1000));
+            client.connect(version, capabilities);
+            while (System.nanoTime() - end < 0) {
+                // Exponential think time gives a Poisson arrival process per client
+                TimeUnit.NANOSECONDS.sleep((long) (-Math.log(1 - random.nextDouble()) / rate * 1e9));
+                double roll = random.nextDouble();
+                if (roll < 0.5) {
+                    client.search(QUERIES[random.nextInt(QUERIES.length)]);
+                } else if (roll < 0.7) {
+                    client.push(1 + random.nextInt(StubApiServer.CATALOG_SIZE));
+                } else {
+                    MusicDetail current = plugin.getMusicPlayerService().getCurrentMusicDetail();
+                    client.vote(current != null ? current.getId() : 0L);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package icu.nyat.kusunoki.musicHud.loadgen;
+
+import icu.nyat.kusunoki.musicHud.MusicHud;
+import icu.nyat.kusunoki.musicHud.network.FrameCompressor;
+import icu.nyat.kusunoki.musicHud.network.OutboundDispatcher;
+import icu.nyat.kusunoki.musicHud.network.PacketType;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies per operation and traffic per message type of one load run.
+ */
+final class LoadReport {
+    private final Map<Operation, LatencyRecorder> latencies = new EnumMap<>(Operation.class);
+    private final Map<PacketType, LongAdder> receivedMessages = new EnumMap<>(PacketType.class);
+    private final Map<PacketType, LongAdder> receivedBytes = new EnumMap<>(PacketType.class);
+
+    LoadReport() {
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyRecorder());
+        }
+        for (PacketType type : PacketType.values()) {
+            receivedMessages.put(type, new LongAdder());
+            receivedBytes.put(type, new LongAdder());
+        }
+    }
+
+    LatencyRecorder get(Operation operation) {
+        return latencies.get(operation);
+    }
+
+    void onReceived(PacketType type, int length) {
+        if (type == null) {
+            return;
+        }
+        receivedMessages.get(type).increment();
+        receivedBytes.get(type).add(length);
+    }
+
+    long getReceivedMessages(PacketType type) {
+        return receivedMessages.get(type).sum();
+    }
+
+    long getReceivedBytes(PacketType type) {
+        return receivedBytes.get(type).sum();
+    }
+
+    void print(PrintStream out, MusicHud plugin, int clients, double seconds) {
+        out.printf("%d clients, %.1f s%n%n", clients, seconds);
+        out.printf("%-8s %10s %10s %10s %10s %9s %9s %9s %9s%n", "op", "sent", "done", "expired", "done/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (Operation operation : Operation.values()) {
+            LatencyRecorder recorder = latencies.get(operation);
+            if (recorder.getSent() == 0) {
+                continue;
+            }
+            out.printf("%-8s %10d %10d %10d %10.1f %9.2f %9.2f %9.2f %9.2f%n", operation.name().toLowerCase(),
+                    recorder.getSent(), recorder.getCompleted(), recorder.getExpired(), recorder.getCompleted() / seconds,
+                    recorder.percentileMillis(50), recorder.percentileMillis(90),
+                    recorder.percentileMillis(99), recorder.percentileMillis(100));
+        }
+
+        out.printf("%n%-30s %10s %12s%n", "received", "messages", "KiB");
+        for (PacketType type : PacketType.values()) {
+            long messages = receivedMessages.get(type).sum();
+            if (messages > 0) {
+                out.printf("%-30s %10d %12d%n", type.name(), messages, receivedBytes.get(type).sum() / 1024);
+            }
+        }
+
+        OutboundDispatcher dispatcher = plugin.getChannelHandler().getOutboundDispatcher();
+        out.printf("%nrate limited %d, inbound rejected %d, outbound coalesced %d, dropped %d, shed %d%n",
+                plugin.getChannelHandler().getRateLimiter().getDroppedCount(),
+                plugin.getChannelHandler().getInboundDispatcher().getRejectedCount(),
+                dispatcher.getCoalescedCount(), dispatcher.getDroppedCount(), dispatcher.getShedCount());
+        FrameCompressor compressor = plugin.getChannelHandler().getCompressor();
+        out.printf("compressed %d frames, %d KiB -> %d KiB, %d skipped, %d reused, %.1f ms deflating%n",
+                compressor.getCompressedCount(), compressor.getInputBytes() / 1024, compressor.getOutputBytes() / 1024,
+                compressor.getSkippedCount(), compressor.getReusedCount(), compressor.getCompressNanos() / 1e6);
+    }
+}
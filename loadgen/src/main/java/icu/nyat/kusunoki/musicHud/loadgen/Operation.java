@@ -0,0 +1,31 @@
+package icu.nyat.kusunoki.musicHud.loadgen;
+
+import icu.nyat.kusunoki.musicHud.network.PacketType;
+
+/**
+ * Client actions the load generator performs, with the message that completes each one.
+ */
+enum Operation {
+    CONNECT(PacketType.CONNECT_REQUEST, PacketType.CONNECT_RESPONSE),
+    SEARCH(PacketType.SEARCH_REQUEST, PacketType.SEARCH_RESPONSE),
+    // Matched by music id against the queue updates and refreshes the client sees, see SimulatedClient
+    PUSH(PacketType.CLIENT_PUSH_MUSIC_TO_QUEUE, null),
+    // Fire and forget
+    VOTE(PacketType.VOTE_SKIP_CURRENT_MUSIC, null);
+
+    private final PacketType request;
+    private final PacketType response;
+
+    Operation(PacketType request, PacketType response) {
+        this.request = request;
+        this.response = response;
+    }
+
+    PacketType getRequest() {
+        return request;
+    }
+
+    PacketType getResponse() {
+        return response;
+    }
+}
@@ -0,0 +1,237 @@
+package icu.nyat.kusunoki.musicHud.loadgen;
+
+import icu.nyat.kusunoki.musicHud.MusicHud;
+import icu.nyat.kusunoki.musicHud.beans.MusicDetail;
+import icu.nyat.kusunoki.musicHud.beans.Version;
+import icu.nyat.kusunoki.musicHud.network.ClientCapability;
+import icu.nyat.kusunoki.musicHud.network.PacketCodecs;
+import icu.nyat.kusunoki.musicHud.network.PacketType;
+import icu.nyat.kusunoki.musicHud.network.QueueDelta;
+import io.netty.buffer.ByteBuf;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A fake player speaking the MusicHud protocol. Requests are fed straight into the plugin's
+ * message listener and plugin messages sent to the player complete the matching request.
+ * <p>
+ * Unicast responses complete the oldest request of their operation. Pushes are matched by
+ * music id against the queue updates and refreshes the player receives, since those are
+ * broadcast to everyone: an APPEND delta completes the pushes of the musics it appends, a
+ * full queue completes those of musics that were not in the previous one. Requests left
+ * without a response expire after a while.
+ */
+final class SimulatedClient extends PlayerMock {
+    private static final long EXPIRE_NANOS = 10_000_000_000L;
+
+    private final MusicHud plugin;
+    private final LoadReport report;
+    // Start times of requests still waiting for their response, oldest first
+    private final Map<Operation, ConcurrentLinkedQueue<Long>> awaiting = new EnumMap<>(Operation.class);
+    // Start times of pushes by music id, guarded by itself
+    private final Map<Long, ArrayDeque<Long>> awaitingPushes = new HashMap<>();
+    // Music ids of the last full queue received, guarded by awaitingPushes
+    private Set<Long> lastQueue = Set.of();
+
+    SimulatedClient(ServerMock server, MusicHud plugin, LoadReport report, int index) {
+        this(server, plugin, report, "loadgen" + index, UUID.nameUUIDFromBytes(("loadgen" + index).getBytes()));
+    }
+
+    SimulatedClient(ServerMock server, MusicHud plugin, LoadReport report, String name, UUID uuid) {
+        super(server, name, uuid);
+        this.plugin = plugin;
+        this.report = report;
+        for (Operation operation : Operation.values()) {
+            awaiting.put(operation, new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    void connect(Version version, Set<ClientCapability> capabilities) {
+        send(Operation.CONNECT, buf -> {
+            PacketCodecs.writeVersion(buf, version);
+            PacketCodecs.writeCapabilities(buf, capabilities);
+        });
+    }
+
+    void search(String query) {
+        send(Operation.SEARCH, buf -> PacketCodecs.writeString(buf, query));
+    }
+
+    void push(long musicId) {
+        synchronized (awaitingPushes) {
+            awaitingPushes.computeIfAbsent(musicId, id -> new ArrayDeque<>()).add(System.nanoTime());
+        }
+        send(Operation.PUSH, buf -> PacketCodecs.writeLong(buf, musicId));
+    }
+
+    void vote(long musicId) {
+        send(Operation.VOTE, buf -> PacketCodecs.writeLong(buf, musicId));
+    }
+
+    /**
+     * Feed a captured inbound message as is, without tracking a response.
+     */
+    void replay(PacketType type, byte[] message) {
+        plugin.getChannelHandler().onPluginMessageReceived(type.getFullChannelName(), this, message);
+    }
+
+    private void send(Operation operation, Consumer<ByteBuf> writer) {
+        ByteBuf buf = PacketCodecs.createFrameBuffer();
+        byte[] message;
+        try {
+            writer.accept(buf);
+            message = PacketCodecs.toFramedByteArray(buf);
+        } finally {
+            buf.release();
+        }
+        long now = System.nanoTime();
+        report.get(operation).onSent();
+        if (operation.getResponse() != null) {
+            awaiting.get(operation).add(now);
+        }
+        expire(now);
+        plugin.getChannelHandler().onPluginMessageReceived(operation.getRequest().getFullChannelName(), this, message);
+    }
+
+    @Override
+    public void sendPluginMessage(@NotNull Plugin source, @NotNull String channel, byte @NotNull [] message) {
+        long now = System.nanoTime();
+        PacketType type = PacketType.fromChannelName(channel);
+        report.onReceived(type, message.length);
+        if (type == PacketType.COMPRESSED_FRAME) {
+            // Responses count as received once their compressed wrapper arrives
+            ByteBuf buf = PacketCodecs.fromByteArray(message);
+            try {
+                PacketCodecs.stripLengthPrefix(buf);
+                type = PacketType.fromChannelName(MusicHud.MOD_ID + ":" + PacketCodecs.readString(buf));
+                message = inflate(buf);
+            } finally {
+                buf.release();
+            }
+        }
+        for (Operation operation : Operation.values()) {
+            if (operation.getResponse() == type) {
+                Long start = awaiting.get(operation).poll();
+                if (start != null) {
+                    report.get(operation).record(now - start);
+                }
+            }
+        }
+        if (type == PacketType.MUSIC_QUEUE_UPDATE || type == PacketType.REFRESH_MUSIC_QUEUE) {
+            completePushes(type, message, now);
+        }
+    }
+
+    /**
+     * Complete the pushes of every music that a queue message newly adds.
+     */
+    private void completePushes(PacketType type, byte[] message, long now) {
+        Collection<MusicDetail> added;
+        Set<Long> fullQueue = null;
+        ByteBuf buf = PacketCodecs.fromByteArray(message);
+        try {
+            PacketCodecs.stripLengthPrefix(buf);
+            QueueDelta.Op op = QueueDelta.Op.SNAPSHOT;
+            if (type == PacketType.MUSIC_QUEUE_UPDATE) {
+                PacketCodecs.readLong(buf);
+                op = QueueDelta.Op.values()[buf.readByte()];
+            }
+            switch (op) {
+                case APPEND -> added = PacketCodecs.readMusicDetailList(buf);
+                case SNAPSHOT -> {
+                    // Always decoded, so the next full queue has something to compare with
+                    added = PacketCodecs.readMusicDetailQueue(buf);
+                    fullQueue = new HashSet<>();
+                    for (MusicDetail detail : added) {
+                        fullQueue.add(detail.getId());
+                    }
+                }
+                default -> added = List.of();
+            }
+        } finally {
+            buf.release();
+        }
+        synchronized (awaitingPushes) {
+            if (fullQueue != null) {
+                Set<Long> previous = lastQueue;
+                lastQueue = fullQueue;
+                added = added.stream().filter(detail -> !previous.contains(detail.getId())).toList();
+            }
+            for (MusicDetail detail : added) {
+                ArrayDeque<Long> starts = awaitingPushes.get(detail.getId());
+                if (starts == null) {
+                    continue;
+                }
+                report.get(Operation.PUSH).record(now - starts.poll());
+                if (starts.isEmpty()) {
+                    awaitingPushes.remove(detail.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Give up on requests that were rate limited, deduplicated or dropped, so they neither
+     * complete a later request's response nor pile up.
+     */
+    private void expire(long now) {
+        for (Map.Entry<Operation, ConcurrentLinkedQueue<Long>> entry : awaiting.entrySet()) {
+            Long start;
+            while ((start = entry.getValue().peek()) != null && now - start > EXPIRE_NANOS) {
+                if (entry.getValue().remove(start)) {
+                    report.get(entry.getKey()).onExpired();
+                }
+            }
+        }
+        synchronized (awaitingPushes) {
+            Iterator<ArrayDeque<Long>> iterator = awaitingPushes.values().iterator();
+            while (iterator.hasNext()) {
+                ArrayDeque<Long> starts = iterator.next();
+                while (!starts.isEmpty() && now - starts.peek() > EXPIRE_NANOS) {
+                    starts.poll();
+                    report.get(Operation.PUSH).onExpired();
+                }
+                if (starts.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * The original frame inside a COMPRESSED_FRAME, positioned after its channel name.
+     */
+    private static byte[] inflate(ByteBuf buf) {
+        buf.readByte();
+        byte[] frame = new byte[PacketCodecs.readVarInt(buf)];
+        byte[] compressed = new byte[PacketCodecs.readVarInt(buf)];
+        buf.readBytes(compressed);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            inflater.inflate(frame);
+            return frame;
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Corrupt compressed frame", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package icu.nyat.kusunoki.musicHud.loadgen;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal stand-in for the NCM API serving canned songs, so a load run measures the plugin
+ * rather than the backend. Every id resolves to a track; an optional delay simulates API latency.
+ */
+final class StubApiServer {
+    static final int CATALOG_SIZE = 500;
+    private static final int TRACK_MILLIS = 180_000;
+
+    private final HttpServer server;
+    private final long delayMillis;
+
+    private StubApiServer(HttpServer server, long delayMillis) {
+        this.server = server;
+        this.delayMillis = delayMillis;
+    }
+
+    static StubApiServer start(long delayMillis) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        StubApiServer api = new StubApiServer(server, delayMillis);
+        server.createContext("/", api::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        return api;
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.getRequestBody().readAllBytes();
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String body = switch (exchange.getRequestURI().getPath()) {
+            case "/cloudsearch" -> "{\"code\":200,\"result\":{\"songs\":" + songs(searchIds()) + "}}";
+            case "/song/detail" -> "{\"code\":200,\"songs\":" + songs(query.getOrDefault("ids", "1")) + "}";
+            case "/song/url/v1" -> "{\"code\":200,\"data\":" + urls(query.getOrDefault("id", "1")) + "}";
+            case "/lyric/new" -> "{\"code\":200,\"lrc\":{\"version\":1,\"lyric\":\"" + lyric() + "\"},\"tlyric\":{\"version\":0,\"lyric\":\"\"}}";
+            default -> "{\"code\":200}";
+        };
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String searchIds() {
+        StringBuilder ids = new StringBuilder();
+        int first = (int) (Math.random() * CATALOG_SIZE);
+        for (int i = 0; i < 30; i++) {
+            if (i > 0) {
+                ids.append(',');
+            }
+            ids.append(1 + (first + i) % CATALOG_SIZE);
+        }
+        return ids.toString();
+    }
+
+    private static String songs(String ids) {
+        StringBuilder json = new StringBuilder("[");
+        for (String id : ids.split(",")) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(id.trim())
+                    .append(",\"name\":\"Track ").append(id.trim())
+                    .append("\",\"ar\":[{\"id\":7,\"name\":\"Artist\"}],\"alia\":[],\"tns\":[]")
+                    .append(",\"al\":{\"id\":3,\"name\":\"Album\",\"picUrl\":\"http://127.0.0.1/pic.jpg\",\"pic\":0}")
+                    .append(",\"dt\":").append(TRACK_MILLIS).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private static String urls(String ids) {
+        StringBuilder json = new StringBuilder("[");
+        for (String id : ids.split(",")) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(id.trim())
+                    .append(",\"url\":\"http://127.0.0.1/").append(id.trim())
+                    .append(".flac\",\"br\":999000,\"size\":30000000,\"type\":\"flac\",\"md5\":\"0\",\"fee\":0,\"time\":")
+                    .append(TRACK_MILLIS).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private static String lyric() {
+        StringBuilder lyric = new StringBuilder();
+        for (int i = 0; i < 60; i++) {
+            lyric.append(String.format("[%02d:%02d.00]line %d\\n", i * 3 / 60, i * 3 % 60, i));
+        }
+        return lyric.toString();
+    }
+
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> query = new HashMap<>();
+        if (raw == null) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+}
@@ -0,0 +1,114 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import icu.nyat.kusunoki.musicHud.beans.*;
+import icu.nyat.kusunoki.musicHud.beans.user.Profile;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Deterministic, realistically sized beans for the codec benchmarks.
+ */
+final class CodecFixtures {
+    private static final String CJK = "春夏秋冬风花雪月山川河海日月星辰天地人心梦想时光岁月青春回忆远方故乡思念温柔等待相遇离别";
+    private static final String KANA = "あいうえおかきくけこさしすせそたちつてとなにぬねのはひふへほまみむめもやゆよらりるれろわをん";
+
+    private CodecFixtures() {
+    }
+
+    /**
+     * A playable track with LRC and translated lyrics of {@code lyricLines} lines each.
+     */
+    static MusicDetail track(long id, int lyricLines) {
+        Random random = new Random(id);
+        LyricInfo lyrics = new LyricInfo(
+                new Lyric(1, lrc(random, lyricLines, KANA)),
+                new Lyric(1, lrc(random, lyricLines, CJK))
+        );
+        MusicResourceInfo resource = new MusicResourceInfo(
+                id,
+                "http://m701.music.126.net/20260101000000/" + Long.toHexString(random.nextLong()) + "/jdymusic/obj/" + id + ".flac",
+                999000,
+                30_000_000L + random.nextInt(10_000_000),
+                FormatType.FLAC,
+                Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()),
+                Fee.VIP,
+                240_000,
+                lyrics
+        );
+        return new MusicDetail(
+                cjk(random, 6),
+                id,
+                List.of(new Artist(id * 7, cjk(random, 3)), new Artist(id * 11, cjk(random, 4))),
+                List.of(cjk(random, 8)),
+                new AlbumInfo(id * 13, cjk(random, 5),
+                        "http://p1.music.126.net/" + Long.toHexString(random.nextLong()) + "/109951163.jpg", 109951163L),
+                240_000,
+                List.of(cjk(random, 6)),
+                new PusherInfo(1L + id, new UUID(id, id), "Player" + id),
+                resource
+        );
+    }
+
+    /**
+     * A playlist entry as returned by the API: metadata only, no resource or lyrics.
+     */
+    static MusicDetail playlistEntry(long id) {
+        Random random = new Random(id);
+        return new MusicDetail(
+                cjk(random, 6),
+                id,
+                List.of(new Artist(id * 7, cjk(random, 3))),
+                List.of(),
+                new AlbumInfo(id * 13, cjk(random, 5),
+                        "http://p1.music.126.net/" + Long.toHexString(random.nextLong()) + "/109951163.jpg", 109951163L),
+                240_000,
+                List.of(),
+                PusherInfo.EMPTY,
+                MusicResourceInfo.NONE
+        );
+    }
+
+    static Queue<MusicDetail> queue(int size, int lyricLines) {
+        Queue<MusicDetail> queue = new ArrayDeque<>(size);
+        for (int i = 0; i < size; i++) {
+            queue.add(track(1000L + i, lyricLines));
+        }
+        return queue;
+    }
+
+    static Playlist playlist(int tracks) {
+        List<MusicDetail> entries = new ArrayList<>(tracks);
+        for (int i = 0; i < tracks; i++) {
+            entries.add(playlistEntry(100_000L + i));
+        }
+        Profile creator = new Profile("歌单创建者", "http://p1.music.126.net/avatar.jpg", "http://p1.music.126.net/bg.jpg", 42L);
+        return new Playlist(7L, "收藏的音乐", 109951163L, "109951163", "http://p1.music.126.net/cover.jpg", creator, entries);
+    }
+
+    private static String lrc(Random random, int lines, String alphabet) {
+        StringBuilder sb = new StringBuilder(lines * 40);
+        for (int i = 0; i < lines; i++) {
+            int millis = i * 240_000 / lines;
+            sb.append(String.format("[%02d:%02d.%02d]", millis / 60_000, millis / 1000 % 60, millis / 10 % 100));
+            sb.append(text(random, 12 + random.nextInt(12), alphabet)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String cjk(Random random, int length) {
+        return text(random, length, CJK);
+    }
+
+    private static String text(Random random, int length, String alphabet) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
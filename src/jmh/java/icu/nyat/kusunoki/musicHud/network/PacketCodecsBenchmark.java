@@ -0,0 +1,125 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import icu.nyat.kusunoki.musicHud.beans.MusicDetail;
+import icu.nyat.kusunoki.musicHud.beans.Playlist;
+import io.netty.buffer.ByteBuf;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Encode and decode throughput of the hottest codec paths.
+ * Run with {@code ./gradlew jmh}; the gc profiler reports allocations per operation.
+ * <p>
+ * Encoders go through the same frame path as ChannelHandler: pre-sized buffer,
+ * body, VarInt prefix and a single copy out. Encoded sizes are printed once per trial,
+ * framed SWITCH_MUSIC and queue refreshes with and without lean encoding side by side.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PacketCodecsBenchmark {
+    private static final int LYRIC_LINES = 120;
+
+    // Fragment cache capacity; 0 measures the full encode
+    @Param({"0", "256"})
+    public int fragmentCache;
+
+    // Omit lyrics of queued entries, as with network.lean-encoding
+    @Param({"false", "true"})
+    public boolean lean;
+
+    private MusicDetail track;
+    private Queue<MusicDetail> queue;
+    private Playlist playlist;
+    private byte[] trackBytes;
+    private byte[] queueBytes;
+    private byte[] playlistBytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        PacketCodecs.configureAllocator(PacketCodecs.AllocatorMode.POOLED, "disabled",
+                Logger.getLogger(PacketCodecsBenchmark.class.getName()));
+        PacketCodecs.configureFragmentCache(fragmentCache);
+
+        track = CodecFixtures.track(1L, LYRIC_LINES);
+        queue = CodecFixtures.queue(50, LYRIC_LINES);
+        playlist = CodecFixtures.playlist(10_000);
+
+        trackBytes = body(PacketCodecs.sizeOfMusicDetail(track), buf -> PacketCodecs.writeMusicDetail(buf, track));
+        queueBytes = body(PacketCodecs.sizeOfMusicDetails(queue, !lean),
+                buf -> PacketCodecs.writeMusicDetailQueue(buf, queue, !lean));
+        playlistBytes = body(PacketCodecs.sizeOfPlaylist(playlist), buf -> PacketCodecs.writePlaylist(buf, playlist));
+
+        System.out.printf("%nEncoded sizes: track=%d B, 10k playlist=%d B%n", trackBytes.length, playlistBytes.length);
+        MusicDetail next = CodecFixtures.track(2L, LYRIC_LINES);
+        for (boolean withLyrics : new boolean[]{true, false}) {
+            int switchMusic = frame(PacketCodecs.sizeOfMusicDetail(track) + PacketCodecs.sizeOfMusicDetail(next, withLyrics)
+                    + PacketCodecs.sizeOfString(""), buf -> {
+                PacketCodecs.writeMusicDetail(buf, track);
+                PacketCodecs.writeMusicDetail(buf, next, withLyrics);
+                PacketCodecs.writeString(buf, "");
+            }).length;
+            int refresh = frame(PacketCodecs.sizeOfMusicDetails(queue, withLyrics) + Integer.BYTES,
+                    buf -> PacketCodecs.writeMusicDetailQueue(buf, queue, withLyrics)).length;
+            System.out.printf("%s frames: SWITCH_MUSIC=%d B, 50-entry REFRESH_MUSIC_QUEUE=%d B%n",
+                    withLyrics ? "Full" : "Lean", switchMusic, refresh);
+        }
+    }
+
+    @Benchmark
+    public byte[] writeMusicDetail() {
+        return frame(PacketCodecs.sizeOfMusicDetail(track), buf -> PacketCodecs.writeMusicDetail(buf, track));
+    }
+
+    @Benchmark
+    public byte[] writeMusicDetailQueue() {
+        return frame(PacketCodecs.sizeOfMusicDetails(queue, !lean),
+                buf -> PacketCodecs.writeMusicDetailQueue(buf, queue, !lean));
+    }
+
+    @Benchmark
+    public byte[] writePlaylist() {
+        return frame(PacketCodecs.sizeOfPlaylist(playlist), buf -> PacketCodecs.writePlaylist(buf, playlist));
+    }
+
+    @Benchmark
+    public MusicDetail readMusicDetail() {
+        return PacketCodecs.readMusicDetail(PacketCodecs.fromByteArray(trackBytes));
+    }
+
+    @Benchmark
+    public Queue<MusicDetail> readMusicDetailQueue() {
+        return PacketCodecs.readMusicDetailQueue(PacketCodecs.fromByteArray(queueBytes));
+    }
+
+    @Benchmark
+    public Playlist readPlaylist() {
+        return PacketCodecs.readPlaylist(PacketCodecs.fromByteArray(playlistBytes));
+    }
+
+    private static byte[] frame(int bodySize, Consumer<ByteBuf> writer) {
+        ByteBuf buf = PacketCodecs.createFrameBuffer(bodySize);
+        try {
+            writer.accept(buf);
+            return PacketCodecs.toFramedByteArray(buf);
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static byte[] body(int bodySize, Consumer<ByteBuf> writer) {
+        ByteBuf buf = PacketCodecs.createBuffer(bodySize);
+        try {
+            writer.accept(buf);
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.readBytes(bytes);
+            return bytes;
+        } finally {
+            buf.release();
+        }
+    }
+}
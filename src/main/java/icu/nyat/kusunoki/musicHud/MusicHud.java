@@ -3,12 +3,14 @@ package icu.nyat.kusunoki.musicHud;
 import icu.nyat.kusunoki.musicHud.commands.MusicHudCommand;
 import icu.nyat.kusunoki.musicHud.config.PluginConfig;
 import icu.nyat.kusunoki.musicHud.network.ChannelHandler;
+import icu.nyat.kusunoki.musicHud.network.PacketCodecs;
 import icu.nyat.kusunoki.musicHud.services.LoginService;
 import icu.nyat.kusunoki.musicHud.services.MusicPlayerService;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 public class MusicHud extends JavaPlugin {
@@ -31,6 +33,10 @@ public class MusicHud extends JavaPlugin {
         // Initialize configuration
         pluginConfig = new PluginConfig(this);
 
+        // Configure codec buffers before any packet is encoded
+        PacketCodecs.configureAllocator(pluginConfig.getBufferAllocator(), pluginConfig.getLeakDetectionLevel(), getLogger());
+        PacketCodecs.configureFragmentCache(pluginConfig.getFragmentCacheSize());
+
         // Initialize services
         loginService = new LoginService(this);
         musicPlayerService = new MusicPlayerService(this);
@@ -100,4 +106,13 @@ public class MusicHud extends JavaPlugin {
             getLogger().log(Level.INFO, "[DEBUG] " + String.format(message, args));
         }
     }
+
+    /**
+     * Log a message built only when debug logging is enabled, for per-packet hot paths.
+     */
+    public void logDebug(Supplier<String> message) {
+        if (pluginConfig.isDebugEnabled()) {
+            getLogger().log(Level.INFO, "[DEBUG] " + message.get());
+        }
+    }
 }
@@ -1,16 +1,24 @@
 package icu.nyat.kusunoki.musicHud.beans;
 
+import icu.nyat.kusunoki.musicHud.codegen.WireCodec;
+import icu.nyat.kusunoki.musicHud.codegen.WireField;
+
 import java.util.Objects;
 
 /**
  * Represents album information for a music track.
  */
+@WireCodec
 public class AlbumInfo {
     public static final AlbumInfo NONE = new AlbumInfo();
     
+    @WireField(0)
     private long id;
+    @WireField(1)
     private String name = "";
+    @WireField(2)
     private String picUrl = "";
+    @WireField(3)
     private long picSize;
     
     public AlbumInfo() {
@@ -1,12 +1,18 @@
 package icu.nyat.kusunoki.musicHud.beans;
 
+import icu.nyat.kusunoki.musicHud.codegen.WireCodec;
+import icu.nyat.kusunoki.musicHud.codegen.WireField;
+
 import java.util.Objects;
 
 /**
  * Represents an artist in the music system.
  */
+@WireCodec
 public class Artist {
+    @WireField(0)
     private long id;
+    @WireField(1)
     private String name;
     
     public Artist() {
@@ -1,12 +1,18 @@
 package icu.nyat.kusunoki.musicHud.beans;
 
+import icu.nyat.kusunoki.musicHud.codegen.WireCodec;
+import icu.nyat.kusunoki.musicHud.codegen.WireField;
+
 /**
  * Represents lyric information.
  */
+@WireCodec
 public class Lyric {
     public static final Lyric NONE = new Lyric(-1, "");
     
+    @WireField(0)
     private int version;
+    @WireField(value = 1, truncate = true)
     private String lyric;
     
     public Lyric() {
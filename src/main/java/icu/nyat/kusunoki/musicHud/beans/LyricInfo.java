@@ -1,13 +1,19 @@
 package icu.nyat.kusunoki.musicHud.beans;
 
+import icu.nyat.kusunoki.musicHud.codegen.WireCodec;
+import icu.nyat.kusunoki.musicHud.codegen.WireField;
+
 /**
  * Contains lyric information including main lyrics and translation.
  */
+@WireCodec
 public class LyricInfo {
     public static final LyricInfo NONE = new LyricInfo();
     
     private int code = 0;
+    @WireField(0)
     private Lyric lrc = Lyric.NONE;
+    @WireField(1)
     private Lyric tlyric = Lyric.NONE;
     
     public LyricInfo() {
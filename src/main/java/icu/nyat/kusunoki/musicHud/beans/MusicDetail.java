@@ -1,24 +1,41 @@
 package icu.nyat.kusunoki.musicHud.beans;
 
+import icu.nyat.kusunoki.musicHud.codegen.WireCodec;
+import icu.nyat.kusunoki.musicHud.codegen.WireField;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
 /**
  * Complete music detail information.
+ * Nested in other beans, e.g. playlist tracks, it is encoded through PacketCodecs so cached
+ * track encodings are reused.
  */
+@WireCodec(nestedVia = "MusicDetail")
 public class MusicDetail {
     public static final MusicDetail NONE = new MusicDetail();
     
+    @WireField(0)
     private String name = "";
+    @WireField(1)
     private long id;
+    @WireField(2)
     private List<Artist> artists = new ArrayList<>();
+    @WireField(3)
     private List<String> alias = new ArrayList<>();
+    @WireField(4)
     private AlbumInfo album = AlbumInfo.NONE;
+    @WireField(5)
     private int durationMillis;
+    @WireField(6)
     private List<String> translations = new ArrayList<>();
+    @WireField(7)
     private PusherInfo pusherInfo = PusherInfo.EMPTY;
+    @WireField(8)
     private MusicResourceInfo musicResourceInfo = MusicResourceInfo.NONE;
+    // Bumped by every setter so cached encodings of this bean go stale
+    private volatile int revision;
     
     public MusicDetail() {
     }
@@ -43,6 +60,7 @@ public class MusicDetail {
     
     public void setName(String name) {
         this.name = name;
+        revision++;
     }
     
     public long getId() {
@@ -51,6 +69,7 @@ public class MusicDetail {
     
     public void setId(long id) {
         this.id = id;
+        revision++;
     }
     
     public List<Artist> getArtists() {
@@ -59,6 +78,7 @@ public class MusicDetail {
     
     public void setArtists(List<Artist> artists) {
         this.artists = artists;
+        revision++;
     }
     
     public List<String> getAlias() {
@@ -67,6 +87,7 @@ public class MusicDetail {
     
     public void setAlias(List<String> alias) {
         this.alias = alias;
+        revision++;
     }
     
     public AlbumInfo getAlbum() {
@@ -75,6 +96,7 @@ public class MusicDetail {
     
     public void setAlbum(AlbumInfo album) {
         this.album = album;
+        revision++;
     }
     
     public int getDurationMillis() {
@@ -83,6 +105,7 @@ public class MusicDetail {
     
     public void setDurationMillis(int durationMillis) {
         this.durationMillis = durationMillis;
+        revision++;
     }
     
     public List<String> getTranslations() {
@@ -91,6 +114,7 @@ public class MusicDetail {
     
     public void setTranslations(List<String> translations) {
         this.translations = translations;
+        revision++;
     }
     
     public PusherInfo getPusherInfo() {
@@ -99,6 +123,7 @@ public class MusicDetail {
     
     public void setPusherInfo(PusherInfo pusherInfo) {
         this.pusherInfo = pusherInfo;
+        revision++;
     }
     
     public MusicResourceInfo getMusicResourceInfo() {
@@ -107,6 +132,11 @@ public class MusicDetail {
     
     public void setMusicResourceInfo(MusicResourceInfo musicResourceInfo) {
         this.musicResourceInfo = musicResourceInfo;
+        revision++;
+    }
+    
+    public int getRevision() {
+        return revision;
     }
     
     public String getArtistNames() {
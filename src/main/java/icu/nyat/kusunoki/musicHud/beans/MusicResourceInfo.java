@@ -1,20 +1,35 @@
 package icu.nyat.kusunoki.musicHud.beans;
 
+import icu.nyat.kusunoki.musicHud.codegen.WireCodec;
+import icu.nyat.kusunoki.musicHud.codegen.WireField;
+
 /**
  * Contains information about music resource URL and quality.
  */
+@WireCodec
 public class MusicResourceInfo {
     public static final MusicResourceInfo NONE = new MusicResourceInfo();
     
+    @WireField(0)
     private long id;
+    @WireField(1)
     private String url = "";
+    @WireField(2)
     private int bitrate;
+    @WireField(3)
     private long size;
+    @WireField(4)
     private FormatType type = FormatType.AUTO;
+    @WireField(5)
     private String md5 = "";
+    @WireField(6)
     private Fee fee = Fee.UNSET;
+    @WireField(7)
     private int time;
+    @WireField(value = 8, omitAs = "NONE")
     private LyricInfo lyricInfo = LyricInfo.NONE;
+    // Bumped by every setter so cached encodings of details holding this resource go stale
+    private volatile int revision;
     
     public MusicResourceInfo() {
     }
@@ -38,6 +53,7 @@ public class MusicResourceInfo {
     
     public void setId(long id) {
         this.id = id;
+        revision++;
     }
     
     public String getUrl() {
@@ -46,6 +62,7 @@ public class MusicResourceInfo {
     
     public void setUrl(String url) {
         this.url = url;
+        revision++;
     }
     
     public int getBitrate() {
@@ -54,6 +71,7 @@ public class MusicResourceInfo {
     
     public void setBitrate(int bitrate) {
         this.bitrate = bitrate;
+        revision++;
     }
     
     public long getSize() {
@@ -62,6 +80,7 @@ public class MusicResourceInfo {
     
     public void setSize(long size) {
         this.size = size;
+        revision++;
     }
     
     public FormatType getType() {
@@ -70,6 +89,7 @@ public class MusicResourceInfo {
     
     public void setType(FormatType type) {
         this.type = type;
+        revision++;
     }
     
     public String getMd5() {
@@ -78,6 +98,7 @@ public class MusicResourceInfo {
     
     public void setMd5(String md5) {
         this.md5 = md5;
+        revision++;
     }
     
     public Fee getFee() {
@@ -86,6 +107,7 @@ public class MusicResourceInfo {
     
     public void setFee(Fee fee) {
         this.fee = fee;
+        revision++;
     }
     
     public int getTime() {
@@ -94,6 +116,7 @@ public class MusicResourceInfo {
     
     public void setTime(int time) {
         this.time = time;
+        revision++;
     }
     
     public LyricInfo getLyricInfo() {
@@ -102,6 +125,11 @@ public class MusicResourceInfo {
     
     public void setLyricInfo(LyricInfo lyricInfo) {
         this.lyricInfo = lyricInfo;
+        revision++;
+    }
+    
+    public int getRevision() {
+        return revision;
     }
     
     public static MusicResourceInfo from(String url, MusicDetail musicDetail) {
@@ -1,6 +1,8 @@
 package icu.nyat.kusunoki.musicHud.beans;
 
 import icu.nyat.kusunoki.musicHud.beans.user.Profile;
+import icu.nyat.kusunoki.musicHud.codegen.WireCodec;
+import icu.nyat.kusunoki.musicHud.codegen.WireField;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -8,14 +10,24 @@ import java.util.List;
 /**
  * Represents a playlist with tracks.
  */
+@WireCodec
 public class Playlist {
+    @WireField(0)
     private long id;
+    @WireField(1)
     private String name = "";
+    @WireField(2)
     private long coverImgId;
+    @WireField(3)
     private String coverImgIdStr = "";
+    @WireField(4)
     private String coverImgUrl = "";
+    @WireField(5)
     private Profile creator = Profile.ANONYMOUS;
+    @WireField(6)
     private List<MusicDetail> tracks = new ArrayList<>();
+    // Server-side only, not part of the wire format; -1 when unknown
+    private int privacy = -1;
     
     public Playlist() {
     }
@@ -98,6 +110,21 @@ public class Playlist {
         return tracks;
     }
 
+    public int getPrivacy() {
+        return privacy;
+    }
+    
+    public void setPrivacy(int privacy) {
+        this.privacy = privacy;
+    }
+    
+    /**
+     * Whether every user sees the same content, so responses for it may be shared.
+     */
+    public boolean isPublic() {
+        return privacy == 0;
+    }
+    
     public void setTracks(List<MusicDetail> tracks) {
         this.tracks = tracks;
     }
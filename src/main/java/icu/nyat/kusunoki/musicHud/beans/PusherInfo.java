@@ -1,10 +1,14 @@
 package icu.nyat.kusunoki.musicHud.beans;
 
+import icu.nyat.kusunoki.musicHud.codegen.WireCodec;
+import icu.nyat.kusunoki.musicHud.codegen.WireField;
+
 import java.util.UUID;
 
 /**
  * Information about who pushed a music track to the queue.
  */
-public record PusherInfo(long uid, UUID playerUUID, String playerName) {
+@WireCodec
+public record PusherInfo(@WireField(0) long uid, @WireField(1) UUID playerUUID, @WireField(2) String playerName) {
     public static final PusherInfo EMPTY = new PusherInfo(0L, new UUID(0L, 0L), "");
 }
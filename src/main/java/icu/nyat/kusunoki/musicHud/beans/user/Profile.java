@@ -1,11 +1,19 @@
 package icu.nyat.kusunoki.musicHud.beans.user;
 
+import icu.nyat.kusunoki.musicHud.codegen.WireCodec;
+import icu.nyat.kusunoki.musicHud.codegen.WireField;
+
+@WireCodec
 public class Profile {
     public static final Profile ANONYMOUS = new Profile("anonymous", "", "", 0L);
 
+    @WireField(0)
     private String nickname;
+    @WireField(1)
     private String avatarUrl;
+    @WireField(2)
     private String backgroundUrl;
+    @WireField(3)
     private long userId;
 
     public Profile(String nickname, String avatarUrl, String backgroundUrl, long userId) {
@@ -2,6 +2,17 @@ package icu.nyat.kusunoki.musicHud.commands;
 
 import icu.nyat.kusunoki.musicHud.MusicHud;
 import icu.nyat.kusunoki.musicHud.beans.MusicDetail;
+import icu.nyat.kusunoki.musicHud.network.FrameCompressor;
+import icu.nyat.kusunoki.musicHud.network.InboundDispatcher;
+import icu.nyat.kusunoki.musicHud.network.JoinBatcher;
+import icu.nyat.kusunoki.musicHud.network.OutboundDispatcher;
+import icu.nyat.kusunoki.musicHud.network.PacketCodecs;
+import icu.nyat.kusunoki.musicHud.network.RateLimiter;
+import icu.nyat.kusunoki.musicHud.network.ResponseCache;
+import icu.nyat.kusunoki.musicHud.network.TrafficCapture;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+import io.netty.util.ResourceLeakDetector;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -11,6 +22,11 @@ import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -24,9 +40,13 @@ public class MusicHudCommand implements CommandExecutor, TabCompleter {
     private final MusicHud plugin;
     
     private static final List<String> SUBCOMMANDS = Arrays.asList(
-            "status", "queue", "skip", "reload", "start", "stop", "help"
+            "status", "queue", "skip", "reload", "start", "stop", "diag", "capture", "help"
     );
     
+    private static final List<String> CAPTURE_ACTIONS = Arrays.asList("start", "stop", "dump", "clear", "status");
+    
+    private static final DateTimeFormatter CAPTURE_FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    
     public MusicHudCommand(MusicHud plugin) {
         this.plugin = plugin;
     }
@@ -48,6 +68,8 @@ public class MusicHudCommand implements CommandExecutor, TabCompleter {
             case "reload" -> reloadConfig(sender);
             case "start" -> startService(sender);
             case "stop" -> stopService(sender);
+            case "diag" -> showDiagnostics(sender);
+            case "capture" -> handleCapture(sender, args);
             case "help" -> showHelp(sender);
             default -> {
                 sender.sendMessage(ChatColor.RED + "未知命令: " + subCommand);
@@ -127,6 +149,11 @@ public class MusicHudCommand implements CommandExecutor, TabCompleter {
         
         plugin.reloadConfig();
         plugin.getPluginConfig().reload();
+        PacketCodecs.configureAllocator(plugin.getPluginConfig().getBufferAllocator(),
+                plugin.getPluginConfig().getLeakDetectionLevel(), plugin.getLogger());
+        PacketCodecs.configureFragmentCache(plugin.getPluginConfig().getFragmentCacheSize());
+        plugin.getChannelHandler().configureResponseCaches();
+        plugin.getChannelHandler().configureCapture();
         
         sender.sendMessage(ChatColor.GREEN + "配置已重新加载");
     }
@@ -161,6 +188,121 @@ public class MusicHudCommand implements CommandExecutor, TabCompleter {
         sender.sendMessage(ChatColor.GREEN + "音乐播放服务已停止");
     }
     
+    private void showDiagnostics(CommandSender sender) {
+        if (!sender.hasPermission("musichud.admin")) {
+            sender.sendMessage(ChatColor.RED + "你没有权限执行此命令");
+            return;
+        }
+        
+        sender.sendMessage(ChatColor.GOLD + "===== MusicHud 诊断 =====");
+        sender.sendMessage(ChatColor.GREEN + "缓冲区分配器: " + ChatColor.WHITE + PacketCodecs.getAllocatorMode());
+        sender.sendMessage(ChatColor.GREEN + "泄漏检测级别: " + ChatColor.WHITE + ResourceLeakDetector.getLevel());
+        sender.sendMessage(ChatColor.GREEN + "检测到的泄漏: " + ChatColor.WHITE + PacketCodecs.getLeaksDetected());
+        sender.sendMessage(ChatColor.GREEN + "编码片段缓存: " + ChatColor.WHITE + PacketCodecs.getFragmentCacheSize()
+                + "/" + PacketCodecs.getFragmentCacheCapacity() + ", 命中 " + PacketCodecs.getFragmentCacheHits()
+                + ", 未命中 " + PacketCodecs.getFragmentCacheMisses() + ", 淘汰 " + PacketCodecs.getFragmentCacheEvictions());
+        
+        OutboundDispatcher dispatcher = plugin.getChannelHandler().getOutboundDispatcher();
+        sender.sendMessage(ChatColor.GREEN + "待发送消息: " + ChatColor.WHITE + dispatcher.getPendingCount()
+                + " (" + (dispatcher.getPendingBytes() / 1024) + " KiB)"
+                + ChatColor.GRAY + " 累计 " + dispatcher.getTotalMessages() + " 条, " + (dispatcher.getTotalBytes() / 1024) + " KiB");
+        ResponseCache<Long> playlists = plugin.getChannelHandler().getPlaylistResponseCache();
+        ResponseCache<String> searches = plugin.getChannelHandler().getSearchResponseCache();
+        sender.sendMessage(ChatColor.GREEN + "响应缓存: " + ChatColor.WHITE + "歌单 " + playlists.size()
+                + " 条 (命中 " + playlists.getHits() + "/未命中 " + playlists.getMisses() + "), 搜索 " + searches.size()
+                + " 条 (命中 " + searches.getHits() + "/未命中 " + searches.getMisses() + ")");
+        InboundDispatcher inbound = plugin.getChannelHandler().getInboundDispatcher();
+        sender.sendMessage(ChatColor.GREEN + "入站排队: " + ChatColor.WHITE + inbound.getQueuedCount()
+                + ", 丢弃旧请求 " + inbound.getDroppedOldestCount() + ", 拒绝 " + inbound.getRejectedCount());
+        RateLimiter limiter = plugin.getChannelHandler().getRateLimiter();
+        StringBuilder limited = new StringBuilder();
+        for (RateLimiter.Category category : RateLimiter.Category.values()) {
+            limited.append(", ").append(category.getConfigKey()).append(' ').append(limiter.getDroppedCount(category));
+        }
+        JoinBatcher joins = plugin.getChannelHandler().getJoinBatcher();
+        sender.sendMessage(ChatColor.GREEN + "批量加入: " + ChatColor.WHITE + joins.getBatchCount() + " 批, "
+                + joins.getBatchedPlayerCount() + " 名玩家" + ChatColor.GRAY + " 连接到首个音频帧 最近 "
+                + joins.getLastLatencyMillis() + " ms, 平均 " + joins.getAverageLatencyMillis() + " ms, 最大 "
+                + joins.getMaxLatencyMillis() + " ms (" + joins.getLatencySamples() + " 次)");
+        sender.sendMessage(ChatColor.GREEN + "限流丢弃: " + ChatColor.WHITE + limiter.getDroppedCount()
+                + ChatColor.GRAY + " (" + limited.substring(2) + ")");
+        sender.sendMessage(ChatColor.GREEN + "合并/丢弃消息: " + ChatColor.WHITE + dispatcher.getCoalescedCount() + "/" + dispatcher.getDroppedCount());
+        FrameCompressor compressor = plugin.getChannelHandler().getCompressor();
+        sender.sendMessage(ChatColor.GREEN + "消息压缩: " + ChatColor.WHITE + compressor.getCompressedCount() + " 条, "
+                + (compressor.getInputBytes() / 1024) + " KiB → " + (compressor.getOutputBytes() / 1024) + " KiB"
+                + String.format(" (%.1f%%)", compressor.getRatio() * 100) + ChatColor.GRAY + " 未压缩 "
+                + compressor.getSkippedCount() + " 条, 复用 " + compressor.getReusedCount() + " 次, 耗时 "
+                + (compressor.getCompressNanos() / 1_000_000L) + " ms");
+        sender.sendMessage(ChatColor.GREEN + "tick 间隔: " + ChatColor.WHITE
+                + String.format("%.1f ms (最近 %.1f ms)", dispatcher.getTickMonitor().getAverageIntervalMs(), dispatcher.getTickMonitor().getLastIntervalMs())
+                + (dispatcher.isDeferring() ? ChatColor.RED + " 延后低优先级消息中" : "")
+                + ChatColor.GRAY + " 累计延后 " + dispatcher.getDeferredTicks() + " tick, 丢弃响应 " + dispatcher.getShedCount());
+        sender.sendMessage(ChatColor.GREEN + "上一 tick: " + ChatColor.WHITE + dispatcher.getLastTickMessages() + " 条, "
+                + dispatcher.getLastTickBytes() + " 字节, " + (dispatcher.getLastTickNanos() / 1000) + " μs");
+        
+        PooledByteBufAllocatorMetric metric = PacketCodecs.getPooledMetric();
+        if (metric == null) {
+            return;
+        }
+        sender.sendMessage(ChatColor.GREEN + "池化堆内存: " + ChatColor.WHITE + (metric.usedHeapMemory() / 1024) + " KiB"
+                + ChatColor.GRAY + " (chunk " + (metric.chunkSize() / 1024) + " KiB, 线程缓存 " + metric.numThreadLocalCaches() + ")");
+        List<PoolArenaMetric> arenas = metric.heapArenas();
+        for (int i = 0; i < arenas.size(); i++) {
+            PoolArenaMetric arena = arenas.get(i);
+            sender.sendMessage(ChatColor.AQUA + "Arena #" + i + ChatColor.WHITE
+                    + " 活跃分配 " + arena.numActiveAllocations()
+                    + ", 活跃字节 " + arena.numActiveBytes()
+                    + ", 累计分配/释放 " + arena.numAllocations() + "/" + arena.numDeallocations());
+        }
+    }
+    
+    private void handleCapture(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("musichud.admin")) {
+            sender.sendMessage(ChatColor.RED + "你没有权限执行此命令");
+            return;
+        }
+        
+        TrafficCapture capture = plugin.getChannelHandler().getCapture();
+        String action = args.length > 1 ? args[1].toLowerCase() : "status";
+        switch (action) {
+            case "start" -> {
+                capture.setEnabled(true);
+                sender.sendMessage(ChatColor.GREEN + "已开始抓包");
+            }
+            case "stop" -> {
+                capture.setEnabled(false);
+                sender.sendMessage(ChatColor.GREEN + "已停止抓包");
+            }
+            case "clear" -> {
+                capture.clear();
+                sender.sendMessage(ChatColor.GREEN + "抓包缓冲区已清空");
+            }
+            case "dump" -> {
+                List<TrafficCapture.CapturedFrame> frames = capture.snapshot();
+                if (frames.isEmpty()) {
+                    sender.sendMessage(ChatColor.YELLOW + "抓包缓冲区为空");
+                    return;
+                }
+                Path file = plugin.getDataFolder().toPath().resolve("captures")
+                        .resolve("capture-" + LocalDateTime.now().format(CAPTURE_FILE_TIME) + ".mhcap");
+                plugin.getExecutor().execute(() -> {
+                    try {
+                        Files.createDirectories(file.getParent());
+                        TrafficCapture.write(file, frames);
+                        sender.sendMessage(ChatColor.GREEN + "已导出 " + frames.size() + " 条消息到 " + ChatColor.WHITE + file);
+                    } catch (IOException e) {
+                        plugin.getLogger().warning("Failed to write capture " + file + ": " + e.getMessage());
+                        sender.sendMessage(ChatColor.RED + "导出失败: " + e.getMessage());
+                    }
+                });
+            }
+            case "status" -> sender.sendMessage(ChatColor.GREEN + "抓包: " + ChatColor.WHITE + (capture.isEnabled() ? "开启" : "关闭")
+                    + ", " + capture.size() + " 条消息, " + (capture.getBytes() / 1024) + " KiB"
+                    + ChatColor.GRAY + " (已覆盖 " + capture.getEvictedCount() + " 条)");
+            default -> sender.sendMessage(ChatColor.RED + "用法: /musichud capture <start|stop|dump|clear|status>");
+        }
+    }
+    
     private void showHelp(CommandSender sender) {
         sender.sendMessage(ChatColor.GOLD + "===== MusicHud 命令帮助 =====");
         sender.sendMessage(ChatColor.GREEN + "/musichud status" + ChatColor.WHITE + " - 显示当前播放状态");
@@ -169,6 +311,8 @@ public class MusicHudCommand implements CommandExecutor, TabCompleter {
         sender.sendMessage(ChatColor.GREEN + "/musichud start" + ChatColor.WHITE + " - 启动音乐服务 (需要管理员权限)");
         sender.sendMessage(ChatColor.GREEN + "/musichud stop" + ChatColor.WHITE + " - 停止音乐服务 (需要管理员权限)");
         sender.sendMessage(ChatColor.GREEN + "/musichud reload" + ChatColor.WHITE + " - 重新加载配置 (需要管理员权限)");
+        sender.sendMessage(ChatColor.GREEN + "/musichud diag" + ChatColor.WHITE + " - 显示网络诊断信息 (需要管理员权限)");
+        sender.sendMessage(ChatColor.GREEN + "/musichud capture <start|stop|dump|clear|status>" + ChatColor.WHITE + " - 抓取并导出插件消息 (需要管理员权限)");
         sender.sendMessage(ChatColor.GREEN + "/musichud help" + ChatColor.WHITE + " - 显示此帮助信息");
     }
     
@@ -180,6 +324,11 @@ public class MusicHudCommand implements CommandExecutor, TabCompleter {
                     .filter(s -> s.startsWith(args[0].toLowerCase()))
                     .collect(Collectors.toList());
         }
+        if (args.length == 2 && args[0].equalsIgnoreCase("capture")) {
+            return CAPTURE_ACTIONS.stream()
+                    .filter(s -> s.startsWith(args[1].toLowerCase()))
+                    .collect(Collectors.toList());
+        }
         return new ArrayList<>();
     }
 }
@@ -1,7 +1,18 @@
 package icu.nyat.kusunoki.musicHud.config;
 
 import icu.nyat.kusunoki.musicHud.MusicHud;
+import icu.nyat.kusunoki.musicHud.http.Deadline;
+import icu.nyat.kusunoki.musicHud.network.InboundDispatcher;
+import icu.nyat.kusunoki.musicHud.network.PacketCodecs;
+import icu.nyat.kusunoki.musicHud.network.PacketType;
+import icu.nyat.kusunoki.musicHud.network.RateLimiter;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.messaging.Messenger;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Plugin configuration wrapper.
@@ -12,16 +23,48 @@ public class PluginConfig {
     // API settings
     private String apiBaseUrl;
     private int apiTimeout;
+    private int apiTotalTimeout;
+    private int maxConcurrentLyrics;
     
     // Playback settings
     private int playbackInterval;
     private boolean idlePlaylistEnabled;
+    private int maxBulkPush;
+    private int playbackSyncIntervalSeconds;
     
     // Vote skip settings
     private boolean voteSkipEnabled;
     private double voteSkipRatio;
     private int voteSkipMinVotes;
     
+    // Network settings
+    private PacketCodecs.AllocatorMode bufferAllocator;
+    private String leakDetectionLevel;
+    private int outboundMaxMessagesPerTick;
+    private long outboundMaxBytesPerTick;
+    private long outboundMaxPlayerBytesPerTick;
+    private long outboundMaxPlayerPendingBytes;
+    private boolean leanEncoding;
+    private int fragmentCacheSize;
+    private int inboundMaxQueuedPerPlayer;
+    private int joinBatchWindowTicks;
+    private boolean captureEnabled;
+    private int captureMaxFrames;
+    private long captureMaxBytes;
+    private double loadSheddingMaxTickIntervalMs;
+    private int loadSheddingMaxDeferTicks;
+    private int maxFrameSize;
+    private int chunkPartSize;
+    private boolean compressionEnabled;
+    private int compressionThreshold;
+    private int compressionLevel;
+    private int responseCacheMaxEntries;
+    private int responseCacheTtlSeconds;
+    // Replaced as a whole on reload, since inbound threads read it concurrently
+    private volatile Map<PacketType, InboundDispatcher.OverflowPolicy> inboundOverflowPolicies = Map.of();
+    // Missing categories are not limited
+    private volatile Map<RateLimiter.Category, RateLimiter.Budget> rateLimits = Map.of();
+    
     // Debug settings
     private boolean debugEnabled;
     
@@ -39,16 +82,79 @@ public class PluginConfig {
         // API settings
         apiBaseUrl = config.getString("api.base-url", "http://localhost:3000");
         apiTimeout = config.getInt("api.timeout", 10000);
+        apiTotalTimeout = Math.max(1, config.getInt("api.total-timeout", 30000));
+        maxConcurrentLyrics = Math.max(1, config.getInt("api.max-concurrent-lyrics", 4));
         
         // Playback settings
         playbackInterval = config.getInt("playback.interval", 1000);
         idlePlaylistEnabled = config.getBoolean("playback.enable-idle-playlist", true);
+        maxBulkPush = Math.max(1, config.getInt("playback.max-bulk-push", 10));
+        playbackSyncIntervalSeconds = Math.max(0, config.getInt("playback.sync-interval-seconds", 15));
         
         // Vote skip settings
         voteSkipEnabled = config.getBoolean("vote-skip.enabled", true);
         voteSkipRatio = config.getDouble("vote-skip.required-ratio", 0.5);
         voteSkipMinVotes = config.getInt("vote-skip.min-votes", 1);
         
+        // Network settings
+        String allocatorName = config.getString("network.allocator", "pooled");
+        PacketCodecs.AllocatorMode allocatorMode = PacketCodecs.AllocatorMode.fromString(allocatorName);
+        if (allocatorMode == null) {
+            // Same as before any configuration is applied
+            plugin.getLogger().warning("Unknown network.allocator: " + allocatorName + ", using unpooled");
+            allocatorMode = PacketCodecs.AllocatorMode.UNPOOLED;
+        }
+        bufferAllocator = allocatorMode;
+        leakDetectionLevel = config.getString("network.leak-detection", "simple");
+        outboundMaxMessagesPerTick = Math.max(1, config.getInt("network.outbound.max-messages-per-tick", 200));
+        outboundMaxBytesPerTick = Math.max(1L, config.getLong("network.outbound.max-bytes-per-tick", 1048576L));
+        outboundMaxPlayerBytesPerTick = Math.max(1L, config.getLong("network.outbound.max-player-bytes-per-tick", 262144L));
+        outboundMaxPlayerPendingBytes = Math.max(1L, config.getLong("network.outbound.max-player-pending-bytes", 4194304L));
+        leanEncoding = config.getBoolean("network.lean-encoding", false);
+        fragmentCacheSize = Math.max(0, config.getInt("network.fragment-cache-size", 256));
+        inboundMaxQueuedPerPlayer = Math.max(1, config.getInt("network.inbound.max-queued-per-player", 16));
+        loadSheddingMaxTickIntervalMs = Math.max(0.0, config.getDouble("network.load-shedding.max-tick-interval-ms", 60.0));
+        loadSheddingMaxDeferTicks = Math.max(0, config.getInt("network.load-shedding.max-defer-ticks", 100));
+        captureEnabled = config.getBoolean("network.capture.enabled", false);
+        captureMaxFrames = Math.max(1, config.getInt("network.capture.max-frames", 20000));
+        captureMaxBytes = Math.max(1L, config.getLong("network.capture.max-bytes", 67108864L));
+        joinBatchWindowTicks = Math.max(0, config.getInt("network.join-batch-window-ticks", 10));
+        compressionEnabled = config.getBoolean("network.compression.enabled", true);
+        compressionThreshold = Math.max(64, config.getInt("network.compression.threshold", 4096));
+        compressionLevel = Math.max(1, Math.min(9, config.getInt("network.compression.level", 6)));
+        responseCacheMaxEntries = Math.max(0, config.getInt("network.response-cache.max-entries", 128));
+        responseCacheTtlSeconds = Math.max(0, config.getInt("network.response-cache.ttl-seconds", 300));
+        // Larger plugin messages are rejected by the server, so bigger frames always have to be split
+        maxFrameSize = Math.max(1024, Math.min(config.getInt("network.chunking.max-frame-size", Messenger.MAX_MESSAGE_SIZE), Messenger.MAX_MESSAGE_SIZE));
+        // Leave room for the part header within a single plugin message
+        chunkPartSize = Math.max(1024, Math.min(config.getInt("network.chunking.part-size", 32000), Messenger.MAX_MESSAGE_SIZE - 256));
+        Map<PacketType, InboundDispatcher.OverflowPolicy> policies = new EnumMap<>(PacketType.class);
+        List<String> dropOldest = config.isList("network.inbound.drop-oldest")
+                ? config.getStringList("network.inbound.drop-oldest")
+                : List.of("SEARCH_REQUEST", "GET_USER_PLAYLIST_REQUEST", "GET_PLAYLIST_DETAIL_REQUEST");
+        for (String name : dropOldest) {
+            try {
+                policies.put(PacketType.valueOf(name.trim().toUpperCase(Locale.ROOT)),
+                        InboundDispatcher.OverflowPolicy.DROP_OLDEST);
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Unknown packet type in network.inbound.drop-oldest: " + name);
+            }
+        }
+        inboundOverflowPolicies = policies;
+        Map<RateLimiter.Category, RateLimiter.Budget> limits = new EnumMap<>(RateLimiter.Category.class);
+        if (config.getBoolean("network.rate-limit.enabled", true)) {
+            for (RateLimiter.Category category : RateLimiter.Category.values()) {
+                String path = "network.rate-limit." + category.getConfigKey();
+                RateLimiter.Budget defaults = defaultRateLimit(category);
+                int capacity = config.getInt(path + ".capacity", defaults.capacity());
+                double perSecond = config.getDouble(path + ".per-second", defaults.perSecond());
+                if (capacity > 0) {
+                    limits.put(category, new RateLimiter.Budget(capacity, Math.max(0.0, perSecond)));
+                }
+            }
+        }
+        rateLimits = limits;
+        
         // Debug settings
         debugEnabled = config.getBoolean("debug.enabled", false);
         
@@ -62,6 +168,24 @@ public class PluginConfig {
     public int getApiTimeout() {
         return apiTimeout;
     }
+
+    /**
+     * Budget in milliseconds for a whole chain of API calls, e.g. a login or a track with its lyrics.
+     */
+    public int getApiTotalTimeout() {
+        return apiTotalTimeout;
+    }
+
+    /**
+     * Deadline for a chain of API calls starting now.
+     */
+    public Deadline newApiDeadline() {
+        return Deadline.after(apiTotalTimeout, apiTimeout);
+    }
+
+    public int getMaxConcurrentLyrics() {
+        return maxConcurrentLyrics;
+    }
     
     public int getPlaybackInterval() {
         return playbackInterval;
@@ -71,6 +195,14 @@ public class PluginConfig {
         return idlePlaylistEnabled;
     }
     
+    public int getMaxBulkPush() {
+        return maxBulkPush;
+    }
+    
+    public int getPlaybackSyncIntervalSeconds() {
+        return playbackSyncIntervalSeconds;
+    }
+    
     public boolean isVoteSkipEnabled() {
         return voteSkipEnabled;
     }
@@ -83,6 +215,114 @@ public class PluginConfig {
         return voteSkipMinVotes;
     }
     
+    public PacketCodecs.AllocatorMode getBufferAllocator() {
+        return bufferAllocator;
+    }
+    
+    public String getLeakDetectionLevel() {
+        return leakDetectionLevel;
+    }
+    
+    public int getOutboundMaxMessagesPerTick() {
+        return outboundMaxMessagesPerTick;
+    }
+    
+    public long getOutboundMaxBytesPerTick() {
+        return outboundMaxBytesPerTick;
+    }
+    
+    public long getOutboundMaxPlayerBytesPerTick() {
+        return outboundMaxPlayerBytesPerTick;
+    }
+    
+    public long getOutboundMaxPlayerPendingBytes() {
+        return outboundMaxPlayerPendingBytes;
+    }
+    
+    public boolean isLeanEncoding() {
+        return leanEncoding;
+    }
+    
+    public int getFragmentCacheSize() {
+        return fragmentCacheSize;
+    }
+    
+    public double getLoadSheddingMaxTickIntervalMs() {
+        return loadSheddingMaxTickIntervalMs;
+    }
+    
+    public int getLoadSheddingMaxDeferTicks() {
+        return loadSheddingMaxDeferTicks;
+    }
+    
+    public boolean isCaptureEnabled() {
+        return captureEnabled;
+    }
+    
+    public int getCaptureMaxFrames() {
+        return captureMaxFrames;
+    }
+    
+    public long getCaptureMaxBytes() {
+        return captureMaxBytes;
+    }
+    
+    public int getJoinBatchWindowTicks() {
+        return joinBatchWindowTicks;
+    }
+    
+    public int getInboundMaxQueuedPerPlayer() {
+        return inboundMaxQueuedPerPlayer;
+    }
+    
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+    
+    public int getChunkPartSize() {
+        return chunkPartSize;
+    }
+    
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+    
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+    
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+    
+    public int getResponseCacheMaxEntries() {
+        return responseCacheMaxEntries;
+    }
+    
+    public int getResponseCacheTtlSeconds() {
+        return responseCacheTtlSeconds;
+    }
+    
+    private static RateLimiter.Budget defaultRateLimit(RateLimiter.Category category) {
+        return switch (category) {
+            case LOGIN -> new RateLimiter.Budget(3, 0.2);
+            case LOOKUP -> new RateLimiter.Budget(5, 1.0);
+            case QUEUE -> new RateLimiter.Budget(10, 2.0);
+            case OTHER -> new RateLimiter.Budget(20, 5.0);
+        };
+    }
+    
+    /**
+     * Token bucket of a message category, or null if it is not limited.
+     */
+    public RateLimiter.Budget getRateLimit(RateLimiter.Category category) {
+        return rateLimits.get(category);
+    }
+    
+    public InboundDispatcher.OverflowPolicy getInboundOverflowPolicy(PacketType type) {
+        return inboundOverflowPolicies.getOrDefault(type, InboundDispatcher.OverflowPolicy.REJECT);
+    }
+    
     public boolean isDebugEnabled() {
         return debugEnabled;
     }
@@ -13,6 +13,8 @@ import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Map;
 import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class ApiClient {
     private static final ObjectMapper MAPPER = new ObjectMapper();
@@ -21,39 +23,97 @@ public class ApiClient {
             .version(HttpClient.Version.HTTP_2)
             .build();
 
+    /**
+     * Blocking GET; waits for {@link #getAsync} and rethrows its failure.
+     */
     public static JsonNode get(String baseUrl, String path, Map<String, String> query, String cookie, int timeoutMs) {
+        return await(getAsync(baseUrl, path, query, cookie, timeoutMs));
+    }
+
+    /**
+     * Blocking POST; waits for {@link #postAsync} and rethrows its failure.
+     */
+    public static JsonNode post(String baseUrl, String path, Map<String, String> query, JsonNode body, String cookie, int timeoutMs) {
+        return await(postAsync(baseUrl, path, query, body, cookie, timeoutMs));
+    }
+
+    /**
+     * GET without holding a thread while the request is in flight. {@code timeoutMs} bounds this
+     * request alone; a chain of calls can be bounded as a whole with {@link CompletableFuture#orTimeout}.
+     * The future fails with a RuntimeException naming the request.
+     */
+    public static CompletableFuture<JsonNode> getAsync(String baseUrl, String path, Map<String, String> query, String cookie, int timeoutMs) {
+        String description = "GET " + path;
         try {
-            URI uri = buildUri(baseUrl, path, query);
             HttpRequest.Builder builder = HttpRequest.newBuilder()
-                    .uri(uri)
+                    .uri(buildUri(baseUrl, path, query))
                     .timeout(Duration.ofMillis(timeoutMs))
                     .GET();
             applyCookie(builder, cookie);
-            HttpResponse<String> response = CLIENT.send(builder.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-            return MAPPER.readTree(response.body());
+            return send(builder.build(), description);
         } catch (Exception e) {
-            throw new RuntimeException("GET " + path + " failed", e);
+            return CompletableFuture.failedFuture(new RuntimeException(description + " failed", e));
         }
     }
 
-    public static JsonNode post(String baseUrl, String path, Map<String, String> query, JsonNode body, String cookie, int timeoutMs) {
+    /**
+     * POST counterpart of {@link #getAsync}.
+     */
+    public static CompletableFuture<JsonNode> postAsync(String baseUrl, String path, Map<String, String> query, JsonNode body, String cookie, int timeoutMs) {
+        String description = "POST " + path;
         try {
-            URI uri = buildUri(baseUrl, path, query);
             ObjectNode payload = body != null ? (body.isObject() ? (ObjectNode) body : MAPPER.createObjectNode()) : MAPPER.createObjectNode();
             if (cookie == null || cookie.isBlank()) {
                 payload.put("noCookie", true);
             }
             HttpRequest.Builder builder = HttpRequest.newBuilder()
-                    .uri(uri)
+                    .uri(buildUri(baseUrl, path, query))
                     .timeout(Duration.ofMillis(timeoutMs))
                     .header("Content-Type", "application/json")
                     .POST(HttpRequest.BodyPublishers.ofString(payload.toString(), StandardCharsets.UTF_8));
             applyCookie(builder, cookie);
-            HttpResponse<String> response = CLIENT.send(builder.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-            return MAPPER.readTree(response.body());
+            return send(builder.build(), description);
         } catch (Exception e) {
-            throw new RuntimeException("POST " + path + " failed", e);
+            return CompletableFuture.failedFuture(new RuntimeException(description + " failed", e));
+        }
+    }
+
+    private static CompletableFuture<JsonNode> send(HttpRequest request, String description) {
+        return CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .handle((response, error) -> {
+                    if (error != null) {
+                        throw new RuntimeException(description + " failed", unwrap(error));
+                    }
+                    try {
+                        return MAPPER.readTree(response.body());
+                    } catch (Exception e) {
+                        throw new RuntimeException(description + " failed", e);
+                    }
+                });
+    }
+
+    /**
+     * Wait for a future and rethrow its original failure rather than the CompletionException around it.
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (unwrap(e) instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The failure behind the CompletionException a dependent stage sees.
+     */
+    public static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
         }
+        return error;
     }
 
     private static URI buildUri(String baseUrl, String path, Map<String, String> query) {
@@ -0,0 +1,53 @@
+package icu.nyat.kusunoki.musicHud.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time budget shared by every request of a composed call chain, e.g. QR check, cookie and
+ * profile, so the chain as a whole fails in time instead of each step getting the full
+ * per-request timeout.
+ * <p>
+ * Each request's own timeout is capped by what is left of the budget, so no request outlives
+ * the deadline: the HTTP client aborts it when its timeout fires.
+ */
+public final class Deadline {
+    private final long expiresAt;
+    private final int requestTimeoutMs;
+
+    private Deadline(long expiresAt, int requestTimeoutMs) {
+        this.expiresAt = expiresAt;
+        this.requestTimeoutMs = requestTimeoutMs;
+    }
+
+    /**
+     * A deadline {@code totalMs} from now for requests that each allow up to {@code requestTimeoutMs}.
+     */
+    public static Deadline after(int totalMs, int requestTimeoutMs) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(totalMs), requestTimeoutMs);
+    }
+
+    public long remainingMillis() {
+        return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return expiresAt - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Timeout for the next request: the per-request timeout, cut to the rest of the budget.
+     * Never zero, so a request started after the deadline fails right away.
+     */
+    public int requestTimeout() {
+        return (int) Math.max(1L, Math.min(requestTimeoutMs, remainingMillis()));
+    }
+
+    /**
+     * Fail {@code future} with a TimeoutException once the deadline passes. Side effects that must
+     * not happen after a reported failure belong in stages after this one.
+     */
+    public <T> CompletableFuture<T> bound(CompletableFuture<T> future) {
+        return future.orTimeout(Math.max(1L, remainingMillis()), TimeUnit.MILLISECONDS);
+    }
+}
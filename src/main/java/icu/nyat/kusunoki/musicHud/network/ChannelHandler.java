@@ -2,14 +2,27 @@ package icu.nyat.kusunoki.musicHud.network;
 
 import icu.nyat.kusunoki.musicHud.MusicHud;
 import icu.nyat.kusunoki.musicHud.beans.MusicDetail;
+import icu.nyat.kusunoki.musicHud.beans.Playlist;
 import icu.nyat.kusunoki.musicHud.beans.Version;
 import io.netty.buffer.ByteBuf;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.messaging.PluginMessageListener;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 
 /**
  * Handles plugin messaging channel registration and incoming messages.
@@ -17,9 +30,27 @@ import java.util.Set;
 public class ChannelHandler implements PluginMessageListener {
     private final MusicHud plugin;
     private final Set<String> registeredChannels = new HashSet<>();
+    private final OutboundDispatcher outboundDispatcher;
+    private final InboundDispatcher inboundDispatcher;
+    private final RateLimiter rateLimiter;
+    private final JoinBatcher joinBatcher;
+    private final TrafficCapture capture;
+    private final FrameCompressor compressor;
+    private final Map<Player, Set<ClientCapability>> capabilities = new ConcurrentHashMap<>();
+    private final AtomicLong nextTransferId = new AtomicLong();
+    private final ResponseCache<Long> playlistResponses = new ResponseCache<>(0, 0);
+    private final ResponseCache<String> searchResponses = new ResponseCache<>(0, 0);
+    private static final HexFormat HEX = HexFormat.ofDelimiter(" ").withUpperCase();
     
     public ChannelHandler(MusicHud plugin) {
         this.plugin = plugin;
+        this.joinBatcher = new JoinBatcher(plugin);
+        this.capture = new TrafficCapture(plugin.getPluginConfig().getCaptureMaxFrames(), plugin.getPluginConfig().getCaptureMaxBytes());
+        this.capture.setEnabled(plugin.getPluginConfig().isCaptureEnabled());
+        this.outboundDispatcher = new OutboundDispatcher(plugin, this::onFrameSent);
+        this.inboundDispatcher = new InboundDispatcher(plugin, this::handlePacket);
+        this.rateLimiter = new RateLimiter(plugin);
+        this.compressor = new FrameCompressor(plugin);
     }
     
     /**
@@ -29,6 +60,7 @@ public class ChannelHandler implements PluginMessageListener {
         // Register C2S channels (incoming from client)
         registerIncoming(PacketType.CONNECT_REQUEST);
         registerIncoming(PacketType.CLIENT_PUSH_MUSIC_TO_QUEUE);
+        registerIncoming(PacketType.CLIENT_PUSH_MUSICS_TO_QUEUE);
         registerIncoming(PacketType.VOTE_SKIP_CURRENT_MUSIC);
         registerIncoming(PacketType.ADD_PLAYLIST_TO_IDLE_PLAY_SOURCE);
         registerIncoming(PacketType.REMOVE_PLAYLIST_FROM_IDLE_PLAY_SOURCE);
@@ -46,13 +78,20 @@ public class ChannelHandler implements PluginMessageListener {
         registerOutgoing(PacketType.CONNECT_RESPONSE);
         registerOutgoing(PacketType.SWITCH_MUSIC);
         registerOutgoing(PacketType.SYNC_CURRENT_PLAYING);
+        registerOutgoing(PacketType.PLAYBACK_POSITION);
         registerOutgoing(PacketType.REFRESH_MUSIC_QUEUE);
+        registerOutgoing(PacketType.MUSIC_QUEUE_UPDATE);
+        registerOutgoing(PacketType.CHUNKED_FRAME);
+        registerOutgoing(PacketType.COMPRESSED_FRAME);
         registerOutgoing(PacketType.LOGIN_RESULT);
         registerOutgoing(PacketType.START_QR_LOGIN_RESPONSE);
         registerOutgoing(PacketType.SEARCH_RESPONSE);
         registerOutgoing(PacketType.GET_USER_PLAYLIST_RESPONSE);
         registerOutgoing(PacketType.GET_PLAYLIST_DETAIL_RESPONSE);
         
+        outboundDispatcher.start();
+        configureResponseCaches();
+        
         plugin.getLogger().info("Registered " + registeredChannels.size() + " plugin messaging channels");
     }
     
@@ -72,6 +111,11 @@ public class ChannelHandler implements PluginMessageListener {
      * Unregister all plugin messaging channels.
      */
     public void unregister() {
+        outboundDispatcher.stop();
+        inboundDispatcher.clear();
+        rateLimiter.clear();
+        joinBatcher.clear();
+        compressor.close();
         for (String channel : registeredChannels) {
             try {
                 plugin.getServer().getMessenger().unregisterIncomingPluginChannel(plugin, channel);
@@ -87,45 +131,56 @@ public class ChannelHandler implements PluginMessageListener {
     public void onPluginMessageReceived(@NotNull String channel, @NotNull Player player, byte @NotNull [] message) {
         PacketType type = PacketType.fromChannelName(channel);
         if (type == null) {
-            plugin.logDebug("Received unknown channel: %s", channel);
+            plugin.logDebug(() -> "Received unknown channel: " + channel);
+            return;
+        }
+        
+        // Recorded before rate limiting, so a replay sees the traffic as it arrived
+        capture.record(false, type, player, message);
+        
+        if (!rateLimiter.tryAcquire(player, type)) {
+            // No response, a flooding client gets nothing to react to
+            plugin.logDebug(() -> "Rate limited " + type.name() + " from " + player.getName());
             return;
         }
         
-        plugin.logDebug("Received packet %s from %s", type.name(), player.getName());
+        plugin.logDebug(() -> "Received packet " + type.name() + " from " + player.getName());
         
-        // Handle in async thread
-        plugin.getExecutor().execute(() -> handlePacket(type, player, message));
+        // Handled off the main thread, in order per player
+        inboundDispatcher.submit(type, player, message);
     }
     
     private void handlePacket(PacketType type, Player player, byte[] message) {
         try {
-            plugin.logDebug("Packet %s from %s: %d bytes, data: %s", 
-                    type.name(), player.getName(), message.length, bytesToHex(message));
+            plugin.logDebug(() -> "Packet " + type.name() + " from " + player.getName() + ": "
+                    + message.length + " bytes, data: " + bytesToHex(message));
             ByteBuf buf = PacketCodecs.fromByteArray(message);
-            if (PacketCodecs.stripLengthPrefix(buf)) {
-                plugin.logDebug("Stripped length prefix for %s from %s", type.name(), player.getName());
-            }
-            
-            switch (type) {
-                case CONNECT_REQUEST -> handleConnectRequest(player, buf);
-                case CLIENT_PUSH_MUSIC_TO_QUEUE -> handlePushMusicToQueue(player, buf);
-                case VOTE_SKIP_CURRENT_MUSIC -> handleVoteSkip(player, buf);
-                case ADD_PLAYLIST_TO_IDLE_PLAY_SOURCE -> handleAddPlaylist(player, buf);
-                case REMOVE_PLAYLIST_FROM_IDLE_PLAY_SOURCE -> handleRemovePlaylist(player, buf);
-                case LOGOUT -> handleLogout(player);
-                case ANONYMOUS_LOGIN_REQUEST -> handleAnonymousLogin(player);
-                case COOKIE_LOGIN_REQUEST -> handleCookieLogin(player, buf);
-                case CLIENT_REMOVE_MUSIC_FROM_QUEUE -> handleRemoveMusicFromQueue(player, buf);
-                case START_QR_LOGIN_REQUEST -> handleStartQrLogin(player);
-                case CANCEL_QR_LOGIN_REQUEST -> handleCancelQrLogin(player);
-                case SEARCH_REQUEST -> handleSearchRequest(player, buf);
-                case GET_USER_PLAYLIST_REQUEST -> handleGetUserPlaylistRequest(player);
-                case GET_PLAYLIST_DETAIL_REQUEST -> handleGetPlaylistDetailRequest(player, buf);
-                // TODO: Implement other handlers as needed
-                default -> plugin.logDebug("Unhandled packet type: %s", type.name());
+            try {
+                if (PacketCodecs.stripLengthPrefix(buf)) {
+                    plugin.logDebug(() -> "Stripped length prefix for " + type.name() + " from " + player.getName());
+                }
+                
+                switch (type) {
+                    case CONNECT_REQUEST -> handleConnectRequest(player, buf);
+                    case CLIENT_PUSH_MUSIC_TO_QUEUE -> handlePushMusicToQueue(player, buf);
+                    case CLIENT_PUSH_MUSICS_TO_QUEUE -> handlePushMusicsToQueue(player, buf);
+                    case VOTE_SKIP_CURRENT_MUSIC -> handleVoteSkip(player, buf);
+                    case ADD_PLAYLIST_TO_IDLE_PLAY_SOURCE -> handleAddPlaylist(player, buf);
+                    case REMOVE_PLAYLIST_FROM_IDLE_PLAY_SOURCE -> handleRemovePlaylist(player, buf);
+                    case LOGOUT -> handleLogout(player);
+                    case ANONYMOUS_LOGIN_REQUEST -> handleAnonymousLogin(player);
+                    case COOKIE_LOGIN_REQUEST -> handleCookieLogin(player, buf);
+                    case CLIENT_REMOVE_MUSIC_FROM_QUEUE -> handleRemoveMusicFromQueue(player, buf);
+                    case START_QR_LOGIN_REQUEST -> handleStartQrLogin(player);
+                    case CANCEL_QR_LOGIN_REQUEST -> handleCancelQrLogin(player);
+                    case SEARCH_REQUEST -> handleSearchRequest(player, buf);
+                    case GET_USER_PLAYLIST_REQUEST -> handleGetUserPlaylistRequest(player);
+                    case GET_PLAYLIST_DETAIL_REQUEST -> handleGetPlaylistDetailRequest(player, buf);
+                    default -> plugin.logDebug(() -> "Unhandled packet type: " + type.name());
+                }
+            } finally {
+                buf.release();
             }
-            
-            buf.release();
         } catch (Exception e) {
             plugin.getLogger().warning("Error handling packet " + type.name() + " from " + player.getName() + ": " + e.getMessage());
             if (plugin.getPluginConfig().isDebugEnabled()) {
@@ -138,11 +193,10 @@ public class ChannelHandler implements PluginMessageListener {
     
     private void handleConnectRequest(Player player, ByteBuf buf) {
         // Debug: print buffer info
-        plugin.logDebug("ConnectRequest buffer: readable=%d, readerIndex=%d", 
-                buf.readableBytes(), buf.readerIndex());
+        plugin.logDebug(() -> "ConnectRequest buffer: readable=" + buf.readableBytes() + ", readerIndex=" + buf.readerIndex());
         
         Version clientVersion = PacketCodecs.readVersion(buf);
-        plugin.logDebug("Player %s connecting with version %s", player.getName(), clientVersion);
+        plugin.logDebug(() -> "Player " + player.getName() + " connecting with version " + clientVersion);
         
         boolean capable = Version.capableWith(clientVersion);
         
@@ -150,59 +204,86 @@ public class ChannelHandler implements PluginMessageListener {
         sendConnectResponse(player, capable, Version.CURRENT);
         
         if (capable) {
-            plugin.getLoginService().joinUnlogged(player);
-            plugin.getMusicPlayerService().sendSyncPlayingStatusToPlayer(player);
+            // Only accepted clients ever get audio, so only they are timed
+            joinBatcher.onConnectRequest(player);
+            // Features are enabled by what the client advertises, never inferred from its version
+            Set<ClientCapability> negotiated = PacketCodecs.readCapabilities(buf);
+            capabilities.put(player, negotiated);
+            plugin.logDebug(() -> "Player " + player.getName() + " negotiated capabilities " + negotiated);
+            // Joined and synced together with everyone else connecting in the same window
+            joinBatcher.submit(player);
         }
     }
     
     private void handlePushMusicToQueue(Player player, ByteBuf buf) {
         long musicId = PacketCodecs.readLong(buf);
-        plugin.logDebug("Player %s pushing music %d to queue", player.getName(), musicId);
+        plugin.logDebug(() -> "Player " + player.getName() + " pushing music " + musicId + " to queue");
         plugin.getMusicPlayerService().pushMusicToQueue(musicId, player);
     }
     
+    private void handlePushMusicsToQueue(Player player, ByteBuf buf) {
+        int count = PacketCodecs.readInt(buf);
+        int max = plugin.getPluginConfig().getMaxBulkPush();
+        if (count < 0 || count > max) {
+            plugin.getLogger().warning("Player " + player.getName() + " tried to push " + count + " musics at once, limit is " + max);
+            return;
+        }
+        // Repeated ids would only fetch and queue the same track again
+        Set<Long> distinct = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            distinct.add(PacketCodecs.readLong(buf));
+        }
+        // Each track costs an API lookup, so it costs a token like a single push; one was taken on receipt
+        if (distinct.size() > 1 && !rateLimiter.tryAcquire(player, PacketType.CLIENT_PUSH_MUSICS_TO_QUEUE, distinct.size() - 1)) {
+            plugin.logDebug(() -> "Rate limited bulk push of " + distinct.size() + " musics from " + player.getName());
+            return;
+        }
+        plugin.logDebug(() -> "Player " + player.getName() + " pushing " + distinct.size() + " musics to queue");
+        plugin.getMusicPlayerService().pushMusicsToQueue(new ArrayList<>(distinct), player);
+    }
+    
     private void handleVoteSkip(Player player, ByteBuf buf) {
         long musicId = PacketCodecs.readLong(buf);
-        plugin.logDebug("Player %s voting to skip music %d", player.getName(), musicId);
+        plugin.logDebug(() -> "Player " + player.getName() + " voting to skip music " + musicId);
         plugin.getMusicPlayerService().voteSkipCurrent(musicId, player);
     }
     
     private void handleAddPlaylist(Player player, ByteBuf buf) {
         long playlistId = PacketCodecs.readLong(buf);
-        plugin.logDebug("Player %s adding playlist %d to idle sources", player.getName(), playlistId);
+        plugin.logDebug(() -> "Player " + player.getName() + " adding playlist " + playlistId + " to idle sources");
         plugin.getMusicPlayerService().addIdlePlaySource(playlistId, player);
     }
     
     private void handleRemovePlaylist(Player player, ByteBuf buf) {
         long playlistId = PacketCodecs.readLong(buf);
-        plugin.logDebug("Player %s removing playlist %d from idle sources", player.getName(), playlistId);
+        plugin.logDebug(() -> "Player " + player.getName() + " removing playlist " + playlistId + " from idle sources");
         plugin.getMusicPlayerService().removeIdlePlaySource(playlistId, player);
     }
     
     private void handleLogout(Player player) {
-        plugin.logDebug("Player %s logging out", player.getName());
+        plugin.logDebug(() -> "Player " + player.getName() + " logging out");
         plugin.getLoginService().logout(player);
     }
     
     private void handleAnonymousLogin(Player player) {
-        plugin.logDebug("Player %s requesting anonymous login", player.getName());
+        plugin.logDebug(() -> "Player " + player.getName() + " requesting anonymous login");
         plugin.getLoginService().anonymousLogin(player);
     }
     
     private void handleCookieLogin(Player player, ByteBuf buf) {
         var loginCookieInfo = PacketCodecs.readLoginCookieInfo(buf);
         boolean tryRefresh = PacketCodecs.readBoolean(buf);
-        plugin.logDebug("Player %s requesting cookie login (tryRefresh=%s)", player.getName(), tryRefresh);
+        plugin.logDebug(() -> "Player " + player.getName() + " requesting cookie login (tryRefresh=" + tryRefresh + ")");
         plugin.getLoginService().cookieLogin(player, loginCookieInfo, tryRefresh);
     }
 
     private void handleStartQrLogin(Player player) {
-        plugin.logDebug("Player %s requesting QR login", player.getName());
+        plugin.logDebug(() -> "Player " + player.getName() + " requesting QR login");
         plugin.getLoginService().startQrLogin(player);
     }
 
     private void handleCancelQrLogin(Player player) {
-        plugin.logDebug("Player %s canceling QR login", player.getName());
+        plugin.logDebug(() -> "Player " + player.getName() + " canceling QR login");
         plugin.getLoginService().cancelQrLogin(player);
     }
     
@@ -217,165 +298,482 @@ public class ChannelHandler implements PluginMessageListener {
         int index = buf.readInt();
         long musicId = buf.readLong();
 
-        plugin.logDebug(
-                "Player %s removing music %d from queue (index=%d, readable=%d)",
-                player.getName(), musicId, index, readable
-        );
+        plugin.logDebug(() -> "Player " + player.getName() + " removing music " + musicId
+                + " from queue (index=" + index + ", readable=" + readable + ")");
 
         plugin.getMusicPlayerService().removeMusicFromQueue(musicId, player);
     }
 
     private void handleSearchRequest(Player player, ByteBuf buf) {
         String query = PacketCodecs.readString(buf);
-        plugin.logDebug("Player %s searching for '%s'", player.getName(), query);
+        plugin.logDebug(() -> "Player " + player.getName() + " searching for '" + query + "'");
+        String key = normalizeQuery(query);
+        EncodedFrame cached = searchResponses.get(key);
+        if (cached != null) {
+            sendFrame(player, cached);
+            return;
+        }
         var result = plugin.getMusicPlayerService().search(query, player);
-        sendSearchResponse(player, result);
+        EncodedFrame frame = encodeSearchResponse(result);
+        // An empty result may be a failed request, so it is not kept
+        if (!result.isEmpty()) {
+            searchResponses.put(key, frame);
+        }
+        sendFrame(player, frame);
+    }
+    
+    private static String normalizeQuery(String query) {
+        return query.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
     }
 
     private void handleGetUserPlaylistRequest(Player player) {
-        plugin.logDebug("Player %s requesting user playlists", player.getName());
+        plugin.logDebug(() -> "Player " + player.getName() + " requesting user playlists");
         var playlists = plugin.getMusicPlayerService().getUserPlaylists(player);
         sendGetUserPlaylistResponse(player, playlists);
     }
 
     private void handleGetPlaylistDetailRequest(Player player, ByteBuf buf) {
         long playlistId = PacketCodecs.readLong(buf);
-        plugin.logDebug("Player %s requesting playlist detail %d", player.getName(), playlistId);
+        plugin.logDebug(() -> "Player " + player.getName() + " requesting playlist detail " + playlistId);
+        EncodedFrame cached = playlistResponses.get(playlistId);
+        if (cached != null) {
+            sendFrame(player, cached);
+            return;
+        }
         var playlist = plugin.getMusicPlayerService().getPlaylistDetail(playlistId, player);
         if (playlist != null) {
-            sendGetPlaylistDetailResponse(player, playlist);
+            EncodedFrame frame = encodePlaylistDetailResponse(playlist);
+            // Private playlists depend on who asks, so only public ones are shared
+            if (playlist.isPublic()) {
+                playlistResponses.put(playlistId, frame);
+            }
+            sendFrame(player, frame);
         }
     }
     
     // ==================== Packet Senders ====================
     
     public void sendConnectResponse(Player player, boolean accepted, Version serverVersion) {
-        ByteBuf buf = PacketCodecs.createBuffer();
-        int startIdx = buf.writerIndex();
-        PacketCodecs.writeBoolean(buf, accepted);
-        int afterBool = buf.writerIndex();
-        PacketCodecs.writeVersion(buf, serverVersion);
-        int afterVersion = buf.writerIndex();
-        plugin.logDebug("ConnectResponse: bool=%d bytes, version=%d bytes, total=%d bytes", 
-                afterBool - startIdx, afterVersion - afterBool, afterVersion - startIdx);
-        sendPacket(player, PacketType.CONNECT_RESPONSE, buf);
+        sendFrame(player, encode(PacketType.CONNECT_RESPONSE, buf -> {
+            int startIdx = buf.writerIndex();
+            PacketCodecs.writeBoolean(buf, accepted);
+            int afterBool = buf.writerIndex();
+            PacketCodecs.writeVersion(buf, serverVersion);
+            int afterVersion = buf.writerIndex();
+            plugin.logDebug(() -> "ConnectResponse: bool=" + (afterBool - startIdx) + " bytes, version="
+                    + (afterVersion - afterBool) + " bytes, total=" + (afterVersion - startIdx) + " bytes");
+        }));
     }
     
     public void sendSwitchMusic(Player player, MusicDetail music, MusicDetail next, String message) {
-        ByteBuf buf = PacketCodecs.createBuffer();
-        PacketCodecs.writeMusicDetail(buf, music);
-        PacketCodecs.writeMusicDetail(buf, next != null ? next : MusicDetail.NONE);
-        PacketCodecs.writeString(buf, message != null ? message : "");
-        sendPacket(player, PacketType.SWITCH_MUSIC, buf);
+        sendFrame(player, encodeSwitchMusic(music, next, message));
+    }
+
+    /**
+     * Encode a switch once and send the same frame to every given player.
+     */
+    public void broadcastSwitchMusic(Iterable<Player> players, MusicDetail music, MusicDetail next, String message) {
+        sendFrameToPlayers(players, encodeSwitchMusic(music, next, message));
+    }
+
+    public EncodedFrame encodeSwitchMusic(MusicDetail music, MusicDetail next, String message) {
+        MusicDetail nextOrNone = next != null ? next : MusicDetail.NONE;
+        String messageOrEmpty = message != null ? message : "";
+        // The next track gets its lyrics again in the SWITCH_MUSIC that starts it
+        boolean nextLyrics = queuedLyrics();
+        int size = PacketCodecs.sizeOfMusicDetail(music)
+                + PacketCodecs.sizeOfMusicDetail(nextOrNone, nextLyrics)
+                + PacketCodecs.sizeOfString(messageOrEmpty);
+        return encode(PacketType.SWITCH_MUSIC, size, buf -> {
+            PacketCodecs.writeMusicDetail(buf, music);
+            PacketCodecs.writeMusicDetail(buf, nextOrNone, nextLyrics);
+            PacketCodecs.writeString(buf, messageOrEmpty);
+        });
     }
     
     public void sendSyncCurrentPlaying(Player player, MusicDetail music, java.time.ZonedDateTime startTime) {
-        ByteBuf buf = PacketCodecs.createBuffer();
-        PacketCodecs.writeMusicDetail(buf, music);
-        PacketCodecs.writeZonedDateTime(buf, startTime);
-        sendPacket(player, PacketType.SYNC_CURRENT_PLAYING, buf);
+        sendFrame(player, encodeSyncCurrentPlaying(music, startTime));
+    }
+
+    public EncodedFrame encodeSyncCurrentPlaying(MusicDetail music, java.time.ZonedDateTime startTime) {
+        int size = PacketCodecs.sizeOfMusicDetail(music) + PacketCodecs.sizeOfZonedDateTime(startTime);
+        return encode(PacketType.SYNC_CURRENT_PLAYING, size, buf -> {
+            PacketCodecs.writeMusicDetail(buf, music);
+            PacketCodecs.writeZonedDateTime(buf, startTime);
+        });
+    }
+    
+    /**
+     * Millisecond position in the current track for {@link ClientCapability#SYNC_PLAYBACK_POSITION} clients.
+     */
+    public EncodedFrame encodePlaybackPosition(long musicId, long positionMillis) {
+        return encode(PacketType.PLAYBACK_POSITION, 2 * Long.BYTES, buf -> {
+            PacketCodecs.writeLong(buf, musicId);
+            PacketCodecs.writeLong(buf, positionMillis);
+        });
     }
     
     public void sendRefreshMusicQueue(Player player, java.util.Queue<MusicDetail> queue) {
-        ByteBuf buf = PacketCodecs.createBuffer();
-        PacketCodecs.writeMusicDetailQueue(buf, queue);
-        sendPacket(player, PacketType.REFRESH_MUSIC_QUEUE, buf);
+        sendFrame(player, encodeRefreshMusicQueue(queue));
+    }
+
+    public EncodedFrame encodeRefreshMusicQueue(java.util.Queue<MusicDetail> queue) {
+        boolean withLyrics = queuedLyrics();
+        EncodedFrame frame = encode(PacketType.REFRESH_MUSIC_QUEUE, PacketCodecs.sizeOfMusicDetails(queue, withLyrics),
+                buf -> PacketCodecs.writeMusicDetailQueue(buf, queue, withLyrics));
+        if (isOversized(frame)) {
+            return frame.withTruncation(() -> encodeRefreshMusicQueue(
+                    new ArrayDeque<>(fitting(queue, detail -> PacketCodecs.sizeOfMusicDetail(detail, withLyrics), frame.length()))));
+        }
+        return frame;
+    }
+
+    /**
+     * Full queue state for {@link ClientCapability#QUEUE_DELTA} clients; replaces any pending queue updates.
+     */
+    public EncodedFrame encodeQueueSnapshotUpdate(long version, java.util.Queue<MusicDetail> queue) {
+        boolean withLyrics = queuedLyrics();
+        EncodedFrame frame = encode(PacketType.MUSIC_QUEUE_UPDATE, Long.BYTES + 1 + PacketCodecs.sizeOfMusicDetails(queue, withLyrics),
+                buf -> PacketCodecs.writeQueueSnapshotUpdate(buf, version, queue, withLyrics));
+        if (isOversized(frame)) {
+            return frame.withTruncation(() -> encodeQueueSnapshotUpdate(version,
+                    new ArrayDeque<>(fitting(queue, detail -> PacketCodecs.sizeOfMusicDetail(detail, withLyrics), frame.length()))));
+        }
+        return frame;
+    }
+
+    /**
+     * A single queue mutation ending at {@code version}. Never coalesced, since later deltas build on it.
+     */
+    public EncodedFrame encodeQueueDeltaUpdate(long version, QueueDelta delta) {
+        boolean withLyrics = queuedLyrics();
+        return encode(PacketType.MUSIC_QUEUE_UPDATE, PacketCodecs.sizeOfQueueDeltaUpdate(delta, withLyrics), false,
+                buf -> PacketCodecs.writeQueueDeltaUpdate(buf, version, delta, withLyrics));
+    }
+    
+    /**
+     * Whether tracks that are not playing yet carry their lyrics; false in lean encoding mode.
+     */
+    private boolean queuedLyrics() {
+        return !plugin.getPluginConfig().isLeanEncoding();
     }
     
     public void sendLoginResult(Player player, boolean success, String message,
                                 icu.nyat.kusunoki.musicHud.services.LoginService.PlayerLoginInfo loginInfo) {
-        ByteBuf buf = PacketCodecs.createBuffer();
-        PacketCodecs.writeBoolean(buf, success);
-        PacketCodecs.writeString(buf, message != null ? message : "");
-        // Write LoginCookieInfo
-        PacketCodecs.writeLoginCookieInfo(buf, loginInfo.getLoginCookieInfo());
-        // Write Profile (order: nickname, avatarUrl, backgroundUrl, userId)
-        var profile = loginInfo.getProfile();
-        PacketCodecs.writeString(buf, profile.getNickname());
-        PacketCodecs.writeString(buf, profile.getAvatarUrl());
-        PacketCodecs.writeString(buf, profile.getBackgroundUrl());
-        PacketCodecs.writeLong(buf, profile.getUserId());
-        sendPacket(player, PacketType.LOGIN_RESULT, buf);
+        sendFrame(player, encode(PacketType.LOGIN_RESULT, buf -> {
+            PacketCodecs.writeBoolean(buf, success);
+            PacketCodecs.writeString(buf, message != null ? message : "");
+            // Write LoginCookieInfo
+            PacketCodecs.writeLoginCookieInfo(buf, loginInfo.getLoginCookieInfo());
+            // Write Profile (order: nickname, avatarUrl, backgroundUrl, userId)
+            var profile = loginInfo.getProfile();
+            PacketCodecs.writeString(buf, profile.getNickname());
+            PacketCodecs.writeString(buf, profile.getAvatarUrl());
+            PacketCodecs.writeString(buf, profile.getBackgroundUrl());
+            PacketCodecs.writeLong(buf, profile.getUserId());
+        }));
     }
 
     public void sendStartQrLoginResponse(Player player, String base64QrImg) {
-        ByteBuf buf = PacketCodecs.createBuffer();
-        PacketCodecs.writeString(buf, base64QrImg);
-        sendPacket(player, PacketType.START_QR_LOGIN_RESPONSE, buf);
+        sendFrame(player, encode(PacketType.START_QR_LOGIN_RESPONSE, PacketCodecs.sizeOfString(base64QrImg),
+                buf -> PacketCodecs.writeString(buf, base64QrImg)));
     }
 
     public void sendSearchResponse(Player player, java.util.List<MusicDetail> result) {
-        ByteBuf buf = PacketCodecs.createBuffer();
-        PacketCodecs.writeMusicDetailList(buf, result);
-        sendPacket(player, PacketType.SEARCH_RESPONSE, buf);
+        sendFrame(player, encodeSearchResponse(result));
+    }
+
+    private EncodedFrame encodeSearchResponse(List<MusicDetail> result) {
+        EncodedFrame frame = encode(PacketType.SEARCH_RESPONSE, PacketCodecs.sizeOfMusicDetails(result),
+                buf -> PacketCodecs.writeMusicDetailList(buf, result));
+        if (isOversized(frame)) {
+            return frame.withTruncation(() -> encodeSearchResponse(
+                    fitting(result, PacketCodecs::sizeOfMusicDetail, frame.length())));
+        }
+        return frame;
     }
 
     public void sendGetUserPlaylistResponse(Player player, java.util.List<icu.nyat.kusunoki.musicHud.beans.Playlist> playlists) {
-        ByteBuf buf = PacketCodecs.createBuffer();
-        PacketCodecs.writePlaylistList(buf, playlists);
-        sendPacket(player, PacketType.GET_USER_PLAYLIST_RESPONSE, buf);
+        sendFrame(player, encodeUserPlaylistResponse(playlists));
+    }
+
+    private EncodedFrame encodeUserPlaylistResponse(List<Playlist> playlists) {
+        EncodedFrame frame = encode(PacketType.GET_USER_PLAYLIST_RESPONSE, PacketCodecs.sizeOfPlaylistList(playlists),
+                buf -> PacketCodecs.writePlaylistList(buf, playlists));
+        if (isOversized(frame)) {
+            return frame.withTruncation(() -> encodeUserPlaylistResponse(
+                    fitting(playlists, PacketCodecs::sizeOfPlaylist, frame.length())));
+        }
+        return frame;
     }
 
     public void sendGetPlaylistDetailResponse(Player player, icu.nyat.kusunoki.musicHud.beans.Playlist playlist) {
-        ByteBuf buf = PacketCodecs.createBuffer();
-        PacketCodecs.writePlaylist(buf, playlist);
-        sendPacket(player, PacketType.GET_PLAYLIST_DETAIL_RESPONSE, buf);
+        sendFrame(player, encodePlaylistDetailResponse(playlist));
+    }
+
+    private EncodedFrame encodePlaylistDetailResponse(Playlist playlist) {
+        EncodedFrame frame = encode(PacketType.GET_PLAYLIST_DETAIL_RESPONSE, PacketCodecs.sizeOfPlaylist(playlist),
+                buf -> PacketCodecs.writePlaylist(buf, playlist));
+        if (isOversized(frame)) {
+            return frame.withTruncation(() -> encodePlaylistDetailResponse(new Playlist(
+                    playlist.getId(), playlist.getName(), playlist.getCoverImgId(), playlist.getCoverImgIdStr(),
+                    playlist.getCoverImgUrl(), playlist.getCreator(),
+                    fitting(playlist.getTracks(), PacketCodecs::sizeOfMusicDetail, frame.length()))));
+        }
+        return frame;
     }
     
-    private void sendPacket(Player player, PacketType type, ByteBuf buf) {
-        byte[] payload = PacketCodecs.toByteArray(buf);
-        buf.release();
-        // Some clients expect a VarInt length prefix before the payload
-        ByteBuf out = PacketCodecs.createBuffer();
-        PacketCodecs.writeVarInt(out, payload.length);
-        out.writeBytes(payload);
-        byte[] data = PacketCodecs.toByteArray(out);
-        out.release();
+    /**
+     * Send a payload written into a {@link PacketCodecs#createFrameBuffer()} buffer to many players.
+     * The caller keeps ownership of {@code buf}.
+     */
+    public void sendPacketToPlayers(Iterable<Player> players, PacketType type, ByteBuf buf) {
+        sendFrameToPlayers(players, new EncodedFrame(type, PacketCodecs.toFramedByteArray(buf)));
+    }
+
+    /**
+     * Encode a length-prefixed frame. The buffer is owned here and released
+     * even when the writer throws.
+     */
+    private static EncodedFrame encode(PacketType type, Consumer<ByteBuf> writer) {
+        return encode(type, -1, writer);
+    }
+
+    /**
+     * Encode a frame into a buffer pre-sized for {@code bodySize} bytes, or the default size if negative.
+     */
+    private static EncodedFrame encode(PacketType type, int bodySize, Consumer<ByteBuf> writer) {
+        return encode(type, bodySize, true, writer);
+    }
+
+    private static EncodedFrame encode(PacketType type, int bodySize, boolean supersedesPending, Consumer<ByteBuf> writer) {
+        ByteBuf buf = bodySize >= 0 ? PacketCodecs.createFrameBuffer(bodySize) : PacketCodecs.createFrameBuffer();
+        try {
+            writer.accept(buf);
+            // Some clients expect a VarInt length prefix before the payload
+            return new EncodedFrame(type, PacketCodecs.toFramedByteArray(buf), supersedesPending);
+        } finally {
+            buf.release();
+        }
+    }
 
+    public void sendFrame(Player player, EncodedFrame frame) {
         // Debug: log the hex data being sent
-        plugin.logDebug("Sending %s to %s: %d bytes, data: %s", 
-                type.name(), player.getName(), data.length, bytesToHex(data));
+        plugin.logDebug(() -> "Sending " + frame.getType().name() + " to " + player.getName() + ": "
+                + frame.length() + " bytes, data: " + bytesToHex(frame.data()));
         
-        // Must run on main thread
-        plugin.getServer().getScheduler().runTask(plugin, () -> {
-            try {
-                player.sendPluginMessage(plugin, type.getFullChannelName(), data);
-                plugin.logDebug("Sent packet %s to %s (%d bytes)", type.name(), player.getName(), data.length);
-            } catch (Exception e) {
-                plugin.getLogger().warning("Failed to send packet " + type.name() + " to " + player.getName() + ": " + e.getMessage());
+        if (compressor.accepts(frame) && hasCapability(player, ClientCapability.COMPRESSED_FRAMES)) {
+            EncodedFrame compressed = compressor.compress(frame);
+            if (compressed != null) {
+                deliver(List.of(player), compressed);
+                return;
             }
-        });
+        }
+        deliver(List.of(player), frame);
     }
-    
-    public void sendPacketToPlayers(Iterable<Player> players, PacketType type, ByteBuf buf) {
-        byte[] payload = PacketCodecs.toByteArray(buf);
-        buf.release();
-
-        ByteBuf out = PacketCodecs.createBuffer();
-        PacketCodecs.writeVarInt(out, payload.length);
-        out.writeBytes(payload);
-        byte[] data = PacketCodecs.toByteArray(out);
-        out.release();
-
-        plugin.getServer().getScheduler().runTask(plugin, () -> {
-            for (Player player : players) {
-                try {
-                    player.sendPluginMessage(plugin, type.getFullChannelName(), data);
-                } catch (Exception e) {
-                    plugin.getLogger().warning("Failed to send packet to " + player.getName() + ": " + e.getMessage());
+
+    /**
+     * Send one shared frame to many players.
+     */
+    public void sendFrameToPlayers(Iterable<Player> players, EncodedFrame frame) {
+        plugin.logDebug(() -> "Broadcasting " + frame.getType().name() + ": " + frame.length() + " bytes");
+        if (!compressor.accepts(frame)) {
+            deliver(players, frame);
+            return;
+        }
+        List<Player> plain = new ArrayList<>();
+        List<Player> deflating = new ArrayList<>();
+        for (Player player : players) {
+            if (hasCapability(player, ClientCapability.COMPRESSED_FRAMES)) {
+                deflating.add(player);
+            } else {
+                plain.add(player);
+            }
+        }
+        // Compressed once and shared, like the frame itself
+        EncodedFrame compressed = deflating.isEmpty() ? null : compressor.compress(frame);
+        if (compressed != null) {
+            deliver(deflating, compressed);
+        } else {
+            plain.addAll(deflating);
+        }
+        deliver(plain, frame);
+    }
+
+    /**
+     * Hand a frame to the dispatcher, which sends it from the main thread on its next tick.
+     */
+    private void deliver(Iterable<Player> players, EncodedFrame frame) {
+        if (isOversized(frame)) {
+            sendOversized(players, frame);
+            return;
+        }
+        outboundDispatcher.enqueue(players, frame);
+    }
+
+    private boolean isOversized(EncodedFrame frame) {
+        return frame.length() > plugin.getPluginConfig().getMaxFrameSize();
+    }
+
+    /**
+     * Deliver a frame above the size limit: in CHUNKED_FRAME parts to clients that support it,
+     * truncated to everyone else. Parts and the truncated frame are built at most once per call.
+     */
+    private void sendOversized(Iterable<Player> players, EncodedFrame frame) {
+        List<EncodedFrame> parts = null;
+        EncodedFrame truncated = null;
+        boolean truncatedBuilt = false;
+        for (Player player : players) {
+            if (hasCapability(player, ClientCapability.CHUNKED_FRAMES)) {
+                if (parts == null) {
+                    parts = split(frame);
+                }
+                for (EncodedFrame part : parts) {
+                    outboundDispatcher.enqueue(player, part);
                 }
+                continue;
             }
-        });
+            if (!truncatedBuilt) {
+                truncated = frame.truncated();
+                truncatedBuilt = true;
+            }
+            if (truncated != null && !isOversized(truncated)) {
+                outboundDispatcher.enqueue(player, truncated);
+            } else {
+                plugin.getLogger().warning("Dropped " + frame.getType().name() + " for " + player.getName()
+                        + ": " + frame.length() + " bytes exceeds the frame size limit");
+            }
+        }
     }
-    
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < Math.min(bytes.length, 64); i++) {
-            sb.append(String.format("%02X ", bytes[i]));
+
+    /**
+     * Split a frame into CHUNKED_FRAME parts that carry its bytes, length prefix included, in order.
+     * Clients reassemble all parts of a transfer and handle the result as a message on the named channel.
+     */
+    private List<EncodedFrame> split(EncodedFrame frame) {
+        List<EncodedFrame> parts = split(frame, nextTransferId.incrementAndGet(), plugin.getPluginConfig().getChunkPartSize());
+        plugin.logDebug(() -> "Split " + frame.getType().name() + " (" + frame.length() + " bytes) into " + parts.size() + " parts");
+        return parts;
+    }
+
+    /**
+     * Split a frame into parts of at most {@code partSize} frame bytes, all tagged with {@code transferId}.
+     */
+    static List<EncodedFrame> split(EncodedFrame frame, long transferId, int partSize) {
+        byte[] data = frame.data();
+        int count = (data.length + partSize - 1) / partSize;
+        String channel = frame.getType().getChannelName();
+        List<EncodedFrame> parts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            int offset = i * partSize;
+            int length = Math.min(partSize, data.length - offset);
+            // The first part stands for the whole transfer when it comes to superseding pending frames
+            boolean supersedesPending = index == 0 && frame.supersedesPending();
+            parts.add(encode(PacketType.CHUNKED_FRAME, PacketCodecs.sizeOfChunk(channel, index, count, length), supersedesPending,
+                    buf -> PacketCodecs.writeChunk(buf, transferId, channel, index, count, data, offset, length))
+                    .withPayloadType(frame.getPayloadType()));
         }
-        if (bytes.length > 64) {
-            sb.append("...");
+        return parts;
+    }
+
+    /**
+     * Longest prefix of {@code items} that still fits once {@code frameLength} is cut down to the frame size limit.
+     */
+    private <T> List<T> fitting(Collection<T> items, ToIntFunction<T> sizeOf, int frameLength) {
+        long budget = plugin.getPluginConfig().getMaxFrameSize();
+        long total = 0;
+        for (T item : items) {
+            total += sizeOf.applyAsInt(item);
+        }
+        // Everything around the items stays, so only the excess has to go
+        long allowed = total - (frameLength - budget);
+        List<T> kept = new ArrayList<>();
+        long size = 0;
+        for (T item : items) {
+            size += sizeOf.applyAsInt(item);
+            if (size > allowed) {
+                break;
+            }
+            kept.add(item);
+        }
+        return kept;
+    }
+    
+    /**
+     * Release per-player network state once a player leaves the server.
+     */
+    public void onPlayerQuit(Player player) {
+        outboundDispatcher.remove(player);
+        inboundDispatcher.remove(player);
+        rateLimiter.remove(player);
+        joinBatcher.remove(player);
+        capabilities.remove(player);
+    }
+    
+    public boolean hasCapability(Player player, ClientCapability capability) {
+        Set<ClientCapability> negotiated = capabilities.get(player);
+        return negotiated != null && negotiated.contains(capability);
+    }
+    
+    public OutboundDispatcher getOutboundDispatcher() {
+        return outboundDispatcher;
+    }
+    
+    public InboundDispatcher getInboundDispatcher() {
+        return inboundDispatcher;
+    }
+    
+    private void onFrameSent(Player player, EncodedFrame frame) {
+        capture.record(true, frame.getType(), player, frame.data());
+        if (!frame.isChunkPart()) {
+            joinBatcher.onFrameSent(player, frame.getPayloadType());
         }
-        return sb.toString().trim();
+    }
+    
+    public TrafficCapture getCapture() {
+        return capture;
+    }
+    
+    public FrameCompressor getCompressor() {
+        return compressor;
+    }
+    
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+    
+    public JoinBatcher getJoinBatcher() {
+        return joinBatcher;
+    }
+    
+    /**
+     * Apply the response cache settings and drop every cached response.
+     */
+    public void configureResponseCaches() {
+        int maxEntries = plugin.getPluginConfig().getResponseCacheMaxEntries();
+        long ttlMillis = plugin.getPluginConfig().getResponseCacheTtlSeconds() * 1000L;
+        playlistResponses.configure(maxEntries, ttlMillis);
+        searchResponses.configure(maxEntries, ttlMillis);
+    }
+    
+    /**
+     * Apply the capture buffer limits from the config; recording is toggled by command.
+     */
+    public void configureCapture() {
+        capture.configure(plugin.getPluginConfig().getCaptureMaxFrames(), plugin.getPluginConfig().getCaptureMaxBytes());
+    }
+    
+    public ResponseCache<Long> getPlaylistResponseCache() {
+        return playlistResponses;
+    }
+    
+    public ResponseCache<String> getSearchResponseCache() {
+        return searchResponses;
+    }
+    
+    private static String bytesToHex(byte[] bytes) {
+        String hex = HEX.formatHex(bytes, 0, Math.min(bytes.length, 64));
+        return bytes.length > 64 ? hex + " ..." : hex;
     }
 }
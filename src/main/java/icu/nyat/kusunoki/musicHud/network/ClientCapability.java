@@ -0,0 +1,51 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Optional protocol features a client advertises in CONNECT_REQUEST, as a VarInt bit set after
+ * its version. Clients that send no bit set only receive the baseline protocol, whatever their
+ * version, and bits the server does not know are ignored.
+ */
+public enum ClientCapability {
+    // Incremental MUSIC_QUEUE_UPDATE messages instead of full REFRESH_MUSIC_QUEUE snapshots
+    QUEUE_DELTA(0),
+    // Oversized frames split into CHUNKED_FRAME parts instead of being truncated
+    CHUNKED_FRAMES(1),
+    // Millisecond PLAYBACK_POSITION messages on join and periodically while a track plays
+    SYNC_PLAYBACK_POSITION(2),
+    // Large frames DEFLATE-compressed into COMPRESSED_FRAME wrappers
+    COMPRESSED_FRAMES(3);
+
+    private final int bit;
+
+    ClientCapability(int bit) {
+        this.bit = bit;
+    }
+
+    /**
+     * Position of this capability's flag in the bit set; fixed once released.
+     */
+    public int getBit() {
+        return bit;
+    }
+
+    public static Set<ClientCapability> fromBits(int bits) {
+        Set<ClientCapability> capabilities = EnumSet.noneOf(ClientCapability.class);
+        for (ClientCapability capability : values()) {
+            if ((bits & (1 << capability.bit)) != 0) {
+                capabilities.add(capability);
+            }
+        }
+        return capabilities;
+    }
+
+    public static int toBits(Set<ClientCapability> capabilities) {
+        int bits = 0;
+        for (ClientCapability capability : capabilities) {
+            bits |= 1 << capability.bit;
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,117 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import java.util.function.Supplier;
+
+/**
+ * A fully encoded, length-prefixed outbound packet.
+ * Frames are immutable, so a single instance can be shared by every player it is sent to;
+ * only the memoized compressed form is filled in later.
+ */
+public final class EncodedFrame {
+    private final PacketType type;
+    private final PacketType payloadType;
+    private final byte[] data;
+    private final boolean supersedesPending;
+    private final Supplier<EncodedFrame> truncation;
+    // Outcome of compressing this frame, kept so shared and cached frames are deflated once
+    private volatile EncodedFrame compressed;
+
+    EncodedFrame(PacketType type, byte[] data) {
+        this(type, data, true);
+    }
+
+    EncodedFrame(PacketType type, byte[] data, boolean supersedesPending) {
+        this(type, type, data, supersedesPending, null);
+    }
+
+    /**
+     * A wrapper frame on channel {@code type} that delivers a message of {@code payloadType}.
+     */
+    EncodedFrame(PacketType type, PacketType payloadType, byte[] data, boolean supersedesPending) {
+        this(type, payloadType, data, supersedesPending, null);
+    }
+
+    private EncodedFrame(PacketType type, PacketType payloadType, byte[] data, boolean supersedesPending, Supplier<EncodedFrame> truncation) {
+        this.type = type;
+        this.payloadType = payloadType;
+        this.data = data;
+        this.supersedesPending = supersedesPending;
+        this.truncation = truncation;
+    }
+
+    /**
+     * The same frame with a smaller replacement for clients that cannot receive it in chunks.
+     */
+    EncodedFrame withTruncation(Supplier<EncodedFrame> truncation) {
+        return new EncodedFrame(type, payloadType, data, supersedesPending, truncation);
+    }
+
+    /**
+     * The same frame marked as carrying (part of) a {@code payloadType} message.
+     */
+    EncodedFrame withPayloadType(PacketType payloadType) {
+        return new EncodedFrame(type, payloadType, data, supersedesPending, truncation);
+    }
+
+    /**
+     * A cut-down version of this frame, or null if the payload cannot be shortened.
+     */
+    EncodedFrame truncated() {
+        return truncation != null ? truncation.get() : null;
+    }
+
+    /**
+     * The COMPRESSED_FRAME wrapper of this frame, this frame itself if compressing it did not pay
+     * off, or null if it was never compressed.
+     */
+    EncodedFrame compressed() {
+        return compressed;
+    }
+
+    void setCompressed(EncodedFrame compressed) {
+        this.compressed = compressed;
+    }
+
+    public PacketType getType() {
+        return type;
+    }
+
+    /**
+     * Type of the message this frame delivers. Differs from {@link #getType()} for COMPRESSED_FRAME
+     * wrappers, which are queued and prioritised like the message they carry, and for CHUNKED_FRAME
+     * parts, which carry a piece of it.
+     */
+    public PacketType getPayloadType() {
+        return payloadType;
+    }
+
+    /**
+     * Whether this is one part of a split transfer. Parts have to arrive in order and complete.
+     */
+    public boolean isChunkPart() {
+        return type == PacketType.CHUNKED_FRAME;
+    }
+
+    /**
+     * Whether this frame makes still-pending frames of the same supersedable type obsolete.
+     * Incremental updates that build on earlier frames return false. Of the parts of a split
+     * frame only the first one carries the flag.
+     */
+    public boolean supersedesPending() {
+        return supersedesPending;
+    }
+
+    /**
+     * Size of the frame on the wire, including the length prefix.
+     */
+    public int length() {
+        return data.length;
+    }
+
+    /**
+     * Backing bytes of the frame. Kept package-private so the array never escapes the network layer.
+     */
+    byte[] data() {
+        return data;
+    }
+}
@@ -0,0 +1,149 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import icu.nyat.kusunoki.musicHud.beans.MusicDetail;
+import icu.nyat.kusunoki.musicHud.beans.MusicResourceInfo;
+import icu.nyat.kusunoki.musicHud.beans.PusherInfo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of encoded MusicDetail bytes, so a track that is sent again
+ * (as next, then current, in queue refreshes and on join) is copied instead of re-encoded.
+ * <p>
+ * Entries are keyed by id, pusher and resource instance plus the revisions of the detail
+ * and its resource, which every setter of either bumps, so any change through them makes
+ * the old fragment unreachable. Nested values such as lyrics, artists and albums are
+ * replaced through those setters rather than modified in place once a track is queued.
+ */
+final class FragmentCache {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile int maxEntries;
+    private final LinkedHashMap<Key, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+            if (size() > maxEntries) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    FragmentCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Only playable tracks are cached; search results and placeholders are sent once and would just churn it.
+     */
+    static boolean isCacheable(MusicDetail detail) {
+        return detail != MusicDetail.NONE && detail.getMusicResourceInfo() != MusicResourceInfo.NONE;
+    }
+
+    byte[] get(MusicDetail detail, boolean withLyrics) {
+        byte[] fragment = peek(detail, withLyrics);
+        if (maxEntries <= 0) {
+            return null;
+        }
+        if (fragment != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return fragment;
+    }
+
+    /**
+     * Look up a fragment without counting it as a hit or miss, for size calculations.
+     */
+    byte[] peek(MusicDetail detail, boolean withLyrics) {
+        if (maxEntries <= 0) {
+            return null;
+        }
+        synchronized (entries) {
+            return entries.get(new Key(detail, withLyrics));
+        }
+    }
+
+    void put(MusicDetail detail, boolean withLyrics, byte[] fragment) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(new Key(detail, withLyrics), fragment);
+        }
+    }
+
+    void resize(int maxEntries) {
+        this.maxEntries = maxEntries;
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    int getMaxEntries() {
+        return maxEntries;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    private static final class Key {
+        private final long id;
+        private final int revision;
+        private final PusherInfo pusher;
+        private final MusicResourceInfo resource;
+        private final int resourceRevision;
+        private final boolean withLyrics;
+
+        private Key(MusicDetail detail, boolean withLyrics) {
+            this.id = detail.getId();
+            this.revision = detail.getRevision();
+            this.pusher = detail.getPusherInfo();
+            this.resource = detail.getMusicResourceInfo();
+            this.resourceRevision = resource.getRevision();
+            this.withLyrics = withLyrics;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key other
+                    && id == other.id
+                    && revision == other.revision
+                    && withLyrics == other.withLyrics
+                    && resource == other.resource
+                    && resourceRevision == other.resourceRevision
+                    && Objects.equals(pusher, other.pusher);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Long.hashCode(id);
+            result = 31 * result + revision;
+            result = 31 * result + Objects.hashCode(pusher);
+            result = 31 * result + System.identityHashCode(resource);
+            result = 31 * result + resourceRevision;
+            return 31 * result + Boolean.hashCode(withLyrics);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import icu.nyat.kusunoki.musicHud.MusicHud;
+import io.netty.buffer.ByteBuf;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * DEFLATE-compresses large outbound frames into COMPRESSED_FRAME wrappers for clients with
+ * {@link ClientCapability#COMPRESSED_FRAMES}.
+ * <p>
+ * Deflaters hold native zlib state, so they are pooled and reset between frames instead of
+ * being created per message. Compression never runs on the main thread: frames sent from it
+ * go out uncompressed rather than stalling the tick.
+ */
+public class FrameCompressor {
+    // Enough for every worker compressing at once; extra deflaters are released after use
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    private final MusicHud plugin;
+    private final ConcurrentLinkedQueue<Deflater> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder inputBytes = new LongAdder();
+    private final LongAdder outputBytes = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    FrameCompressor(MusicHud plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Whether {@code frame} is worth compressing on the current thread.
+     */
+    boolean accepts(EncodedFrame frame) {
+        return plugin.getPluginConfig().isCompressionEnabled()
+                && frame.length() >= plugin.getPluginConfig().getCompressionThreshold()
+                && frame.getType() != PacketType.CHUNKED_FRAME
+                && frame.getType() != PacketType.COMPRESSED_FRAME
+                && !plugin.getServer().isPrimaryThread();
+    }
+
+    /**
+     * Wrap the whole frame, length prefix included, into a COMPRESSED_FRAME. The outcome is
+     * remembered on the frame, so frames sent again from a cache are only deflated once; a
+     * compression level changed by a reload applies to frames encoded after it.
+     *
+     * @return the wrapper, or null if it would not be smaller than the frame itself
+     */
+    EncodedFrame compress(EncodedFrame frame) {
+        EncodedFrame memo = frame.compressed();
+        if (memo != null) {
+            reused.increment();
+            return memo != frame ? memo : null;
+        }
+        EncodedFrame wrapper = deflate(frame);
+        frame.setCompressed(wrapper != null ? wrapper : frame);
+        return wrapper;
+    }
+
+    private EncodedFrame deflate(EncodedFrame frame) {
+        byte[] data = frame.data();
+        // Output that does not fit into the input's size is useless, so it is never grown
+        byte[] out = new byte[data.length];
+        int length;
+        boolean finished;
+        Deflater deflater = borrow();
+        long start = System.nanoTime();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            length = deflater.deflate(out);
+            finished = deflater.finished();
+        } finally {
+            nanos.add(System.nanoTime() - start);
+            release(deflater);
+        }
+        inputBytes.add(data.length);
+
+        String channel = frame.getType().getChannelName();
+        int bodySize = finished ? PacketCodecs.sizeOfCompressed(channel, data.length, length) : Integer.MAX_VALUE;
+        if (bodySize >= data.length - PacketCodecs.varIntSize(bodySize)) {
+            skipped.increment();
+            outputBytes.add(data.length);
+            return null;
+        }
+
+        EncodedFrame wrapper = wrap(frame, out, length);
+        compressed.increment();
+        outputBytes.add(wrapper.length());
+        plugin.logDebug(() -> "Compressed " + frame.getType().name() + " from " + data.length + " to " + wrapper.length() + " bytes");
+        return wrapper;
+    }
+
+    /**
+     * The COMPRESSED_FRAME wrapper carrying the first {@code length} bytes of {@code deflated},
+     * the DEFLATE output of {@code frame}.
+     */
+    static EncodedFrame wrap(EncodedFrame frame, byte[] deflated, int length) {
+        String channel = frame.getType().getChannelName();
+        ByteBuf buf = PacketCodecs.createFrameBuffer(PacketCodecs.sizeOfCompressed(channel, frame.length(), length));
+        try {
+            PacketCodecs.writeCompressed(buf, channel, PacketCodecs.COMPRESSION_DEFLATE, frame.length(), deflated, length);
+            return new EncodedFrame(PacketType.COMPRESSED_FRAME, frame.getPayloadType(),
+                    PacketCodecs.toFramedByteArray(buf), frame.supersedesPending());
+        } finally {
+            buf.release();
+        }
+    }
+
+    private Deflater borrow() {
+        Deflater deflater = pool.poll();
+        if (deflater == null) {
+            deflater = new Deflater(plugin.getPluginConfig().getCompressionLevel());
+        } else {
+            pooled.decrementAndGet();
+            deflater.setLevel(plugin.getPluginConfig().getCompressionLevel());
+        }
+        return deflater;
+    }
+
+    private void release(Deflater deflater) {
+        deflater.reset();
+        if (pooled.incrementAndGet() <= POOL_SIZE) {
+            pool.add(deflater);
+        } else {
+            pooled.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    /**
+     * Free the native state of every pooled deflater.
+     */
+    void close() {
+        Deflater deflater;
+        while ((deflater = pool.poll()) != null) {
+            pooled.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    public long getCompressedCount() {
+        return compressed.sum();
+    }
+
+    /**
+     * Frames sent uncompressed because DEFLATE did not make them smaller.
+     */
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    /**
+     * Sends that reused the earlier outcome of compressing the same frame instead of deflating it again.
+     */
+    public long getReusedCount() {
+        return reused.sum();
+    }
+
+    public long getInputBytes() {
+        return inputBytes.sum();
+    }
+
+    public long getOutputBytes() {
+        return outputBytes.sum();
+    }
+
+    /**
+     * Output bytes per input byte over every attempted frame, skipped ones counted at full size.
+     */
+    public double getRatio() {
+        long input = inputBytes.sum();
+        return input > 0 ? (double) outputBytes.sum() / input : 1.0;
+    }
+
+    /**
+     * Time spent inside the deflater. Compression is CPU bound and never blocks, so this is CPU time.
+     */
+    public long getCompressNanos() {
+        return nanos.sum();
+    }
+}
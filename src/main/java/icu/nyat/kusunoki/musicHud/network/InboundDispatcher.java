@@ -0,0 +1,171 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import icu.nyat.kusunoki.musicHud.MusicHud;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs inbound packets off the main thread, one player at a time.
+ * <p>
+ * Every player has a mailbox whose packets are handled in arrival order by a single
+ * task on the plugin executor, so different players still run in parallel while one
+ * client can neither reorder its own requests nor fan out unbounded API calls.
+ * A full mailbox applies the {@link OverflowPolicy} of the arriving packet's type.
+ */
+public class InboundDispatcher {
+    private final MusicHud plugin;
+    private final PacketHandler handler;
+    private final Map<Player, PlayerMailbox> mailboxes = new ConcurrentHashMap<>();
+    private final LongAdder droppedOldest = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * What to do with a packet that arrives while its player's mailbox is full.
+     */
+    public enum OverflowPolicy {
+        // Drop the oldest queued packet that is itself replaceable, e.g. a stale search
+        DROP_OLDEST,
+        // Drop the arriving packet
+        REJECT
+    }
+
+    @FunctionalInterface
+    interface PacketHandler {
+        void handle(PacketType type, Player player, byte[] message);
+    }
+
+    InboundDispatcher(MusicHud plugin, PacketHandler handler) {
+        this.plugin = plugin;
+        this.handler = handler;
+    }
+
+    public void submit(PacketType type, Player player, byte[] message) {
+        PlayerMailbox mailbox = mailboxes.computeIfAbsent(player, PlayerMailbox::new);
+        if (mailbox.offer(new Inbound(type, message))) {
+            try {
+                plugin.getExecutor().execute(mailbox::drain);
+            } catch (RejectedExecutionException e) {
+                // Plugin is shutting down
+                mailbox.close();
+            }
+        }
+    }
+
+    /**
+     * Drop everything queued for a player that left.
+     */
+    public void remove(Player player) {
+        PlayerMailbox mailbox = mailboxes.remove(player);
+        if (mailbox != null) {
+            mailbox.close();
+        }
+    }
+
+    public void clear() {
+        mailboxes.values().forEach(PlayerMailbox::close);
+        mailboxes.clear();
+    }
+
+    public int getQueuedCount() {
+        int count = 0;
+        for (PlayerMailbox mailbox : mailboxes.values()) {
+            count += mailbox.size();
+        }
+        return count;
+    }
+
+    public long getDroppedOldestCount() {
+        return droppedOldest.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private record Inbound(PacketType type, byte[] message) {
+    }
+
+    /**
+     * Queued packets of a single player.
+     */
+    private final class PlayerMailbox {
+        private final Player player;
+        private final ArrayDeque<Inbound> queue = new ArrayDeque<>();
+        // True while a drain task is scheduled or running
+        private boolean running;
+        private boolean closed;
+
+        private PlayerMailbox(Player player) {
+            this.player = player;
+        }
+
+        /**
+         * Queue a packet, applying the overflow policy if the mailbox is full.
+         *
+         * @return true if a drain task has to be started
+         */
+        private synchronized boolean offer(Inbound inbound) {
+            if (closed) {
+                return false;
+            }
+            if (queue.size() >= plugin.getPluginConfig().getInboundMaxQueuedPerPlayer() && !makeRoom(inbound.type())) {
+                rejected.increment();
+                plugin.logDebug(() -> "Rejected " + inbound.type().name() + " from " + player.getName() + ": mailbox full");
+                return false;
+            }
+            queue.add(inbound);
+            if (running) {
+                return false;
+            }
+            running = true;
+            return true;
+        }
+
+        private boolean makeRoom(PacketType arriving) {
+            if (plugin.getPluginConfig().getInboundOverflowPolicy(arriving) != OverflowPolicy.DROP_OLDEST) {
+                return false;
+            }
+            Iterator<Inbound> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                Inbound queued = iterator.next();
+                if (plugin.getPluginConfig().getInboundOverflowPolicy(queued.type()) == OverflowPolicy.DROP_OLDEST) {
+                    iterator.remove();
+                    droppedOldest.increment();
+                    plugin.logDebug(() -> "Dropped queued " + queued.type().name() + " from " + player.getName());
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private synchronized Inbound poll() {
+            Inbound next = queue.poll();
+            if (next == null) {
+                running = false;
+            }
+            return next;
+        }
+
+        private void drain() {
+            Inbound inbound;
+            while ((inbound = poll()) != null) {
+                handler.handle(inbound.type(), player, inbound.message());
+            }
+        }
+
+        private synchronized int size() {
+            return queue.size();
+        }
+
+        private synchronized void close() {
+            closed = true;
+            queue.clear();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import icu.nyat.kusunoki.musicHud.MusicHud;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects players that finished the connect handshake within a short window and brings
+ * them up to date together, so a join storm after a restart costs one sync and one queue
+ * encode instead of one per player.
+ * <p>
+ * Also measures the time from CONNECT_REQUEST to the first frame that lets a client
+ * start audio (SYNC_CURRENT_PLAYING or SWITCH_MUSIC) actually leaving the server.
+ */
+public class JoinBatcher {
+    private final MusicHud plugin;
+    private final Map<Player, Long> awaitingAudio = new ConcurrentHashMap<>();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedPlayers = new LongAdder();
+    private final LongAdder latencySamples = new LongAdder();
+    private final LongAdder latencyTotalNanos = new LongAdder();
+    private final AtomicLong latencyMaxNanos = new AtomicLong();
+    private volatile long lastLatencyNanos;
+    // Guarded by this
+    private List<Player> pending = new ArrayList<>();
+
+    JoinBatcher(MusicHud plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Note when a player's CONNECT_REQUEST arrived, for the connect-to-first-audio latency.
+     */
+    void onConnectRequest(Player player) {
+        awaitingAudio.put(player, System.nanoTime());
+    }
+
+    /**
+     * Queue an accepted player for the next batch; the first player of a window schedules its flush.
+     */
+    void submit(Player player) {
+        int windowTicks = plugin.getPluginConfig().getJoinBatchWindowTicks();
+        if (windowTicks <= 0) {
+            join(List.of(player));
+            return;
+        }
+        boolean first;
+        synchronized (this) {
+            first = pending.isEmpty();
+            pending.add(player);
+        }
+        if (first) {
+            plugin.getServer().getScheduler().runTaskLater(plugin, this::flush, windowTicks);
+        }
+    }
+
+    private void flush() {
+        List<Player> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        batch.removeIf(player -> !player.isOnline());
+        if (batch.isEmpty()) {
+            return;
+        }
+        batches.increment();
+        batchedPlayers.add(batch.size());
+        plugin.logDebug(() -> "Joining batch of " + batch.size() + " players");
+        try {
+            // Encoding stays off the main thread; the outbound dispatcher delivers the frames on its next tick
+            plugin.getExecutor().execute(() -> join(batch));
+        } catch (RejectedExecutionException e) {
+            // Plugin is shutting down
+        }
+    }
+
+    private void join(List<Player> batch) {
+        // Players may have quit while the batch waited for an executor thread
+        List<Player> players = batch.stream().filter(Player::isOnline).toList();
+        if (players.isEmpty()) {
+            return;
+        }
+        for (Player player : players) {
+            plugin.getLoginService().joinUnlogged(player);
+        }
+        plugin.getMusicPlayerService().sendSyncPlayingStatusToPlayers(players);
+    }
+
+    /**
+     * Called by the outbound dispatcher for every frame it sent.
+     */
+    void onFrameSent(Player player, PacketType type) {
+        if (type != PacketType.SYNC_CURRENT_PLAYING && type != PacketType.SWITCH_MUSIC) {
+            return;
+        }
+        Long connectedAt = awaitingAudio.remove(player);
+        if (connectedAt == null) {
+            return;
+        }
+        long latency = System.nanoTime() - connectedAt;
+        lastLatencyNanos = latency;
+        latencySamples.increment();
+        latencyTotalNanos.add(latency);
+        latencyMaxNanos.accumulateAndGet(latency, Math::max);
+        plugin.logDebug(() -> "Player " + player.getName() + " got first audio frame " + (latency / 1_000_000L) + " ms after connecting");
+    }
+
+    void remove(Player player) {
+        awaitingAudio.remove(player);
+        synchronized (this) {
+            pending.remove(player);
+        }
+    }
+
+    void clear() {
+        awaitingAudio.clear();
+        synchronized (this) {
+            pending.clear();
+        }
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getBatchedPlayerCount() {
+        return batchedPlayers.sum();
+    }
+
+    public long getLatencySamples() {
+        return latencySamples.sum();
+    }
+
+    public long getLastLatencyMillis() {
+        return lastLatencyNanos / 1_000_000L;
+    }
+
+    public long getAverageLatencyMillis() {
+        long samples = latencySamples.sum();
+        return samples > 0 ? latencyTotalNanos.sum() / samples / 1_000_000L : 0L;
+    }
+
+    public long getMaxLatencyMillis() {
+        return latencyMaxNanos.get() / 1_000_000L;
+    }
+}
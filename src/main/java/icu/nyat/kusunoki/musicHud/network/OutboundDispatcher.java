@@ -0,0 +1,476 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import icu.nyat.kusunoki.musicHud.MusicHud;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects outbound frames from any thread and flushes them from a single repeating
+ * main-thread task.
+ * <p>
+ * Every player has an outbox with three lanes: urgent frames (switches, login results)
+ * go first, then supersedable state where a newer frame drops the pending ones of its
+ * type, then everything else in order. Each tick is bounded by a global message and
+ * byte budget and by a per-player byte budget; a player whose backlog exceeds its
+ * pending limit loses its oldest ordinary frames instead of growing without bound.
+ * <p>
+ * While the {@link TickMonitor} reports tick intervals above the configured limit, low-priority
+ * frames (queue refreshes and search or playlist responses) are held back so MusicHud
+ * adds as little main-thread work as possible; if the lag lasts, pending responses are
+ * dropped. Urgent frames such as SWITCH_MUSIC are never held back.
+ */
+public class OutboundDispatcher {
+    private final MusicHud plugin;
+    private final BiConsumer<Player, EncodedFrame> sentListener;
+    private final Map<Player, PlayerOutbox> outboxes = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<PlayerOutbox> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final TickMonitor tickMonitor = new TickMonitor();
+    private BukkitTask task;
+
+    // Written by the drain task only, read by diagnostics
+    private volatile long totalMessages;
+    private volatile long totalBytes;
+    private volatile int lastTickMessages;
+    private volatile long lastTickBytes;
+    private volatile long lastTickNanos;
+    private volatile int overloadedTicks;
+    private volatile long deferredTicks;
+
+    private enum Lane {
+        URGENT,
+        LATEST,
+        NORMAL
+    }
+
+    OutboundDispatcher(MusicHud plugin, BiConsumer<Player, EncodedFrame> sentListener) {
+        this.plugin = plugin;
+        this.sentListener = sentListener;
+    }
+
+    /**
+     * Lane of a frame by the message it delivers, so wrappers go where that message would. Chunk
+     * parts are never coalesced, so parts of supersedable state stay together in the ordinary lane,
+     * while parts of urgent messages keep their order in the urgent one.
+     */
+    private static Lane laneOf(EncodedFrame frame) {
+        Lane lane = laneOf(frame.getPayloadType());
+        return frame.isChunkPart() && lane == Lane.LATEST ? Lane.NORMAL : lane;
+    }
+
+    /**
+     * Queue state that must not overtake a snapshot still being sent in parts.
+     */
+    private static boolean isQueueState(PacketType type) {
+        return type == PacketType.REFRESH_MUSIC_QUEUE || type == PacketType.MUSIC_QUEUE_UPDATE;
+    }
+
+    private static Lane laneOf(PacketType type) {
+        return switch (type) {
+            case SWITCH_MUSIC, LOGIN_RESULT -> Lane.URGENT;
+            case REFRESH_MUSIC_QUEUE, MUSIC_QUEUE_UPDATE, SYNC_CURRENT_PLAYING, PLAYBACK_POSITION -> Lane.LATEST;
+            default -> Lane.NORMAL;
+        };
+    }
+
+    /**
+     * Frames that may wait while the server is lagging.
+     */
+    private static boolean isLowPriority(PacketType type) {
+        return switch (type) {
+            case REFRESH_MUSIC_QUEUE, MUSIC_QUEUE_UPDATE, SEARCH_RESPONSE, GET_USER_PLAYLIST_RESPONSE,
+                 GET_PLAYLIST_DETAIL_RESPONSE -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Low-priority frames that may be dropped once the lag lasts; the client can simply ask again.
+     * Queue state is only deferred since it is coalesced anyway. Chunk parts are deferred like the
+     * message they carry but never dropped halfway through a transfer, neither here nor by the
+     * pending limit.
+     */
+    private static boolean isSheddable(PacketType type) {
+        return switch (type) {
+            case SEARCH_RESPONSE, GET_USER_PLAYLIST_RESPONSE, GET_PLAYLIST_DETAIL_RESPONSE -> true;
+            default -> false;
+        };
+    }
+
+    public synchronized void start() {
+        if (task != null) return;
+        tickMonitor.reset();
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::drain, 1L, 1L);
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        for (PlayerOutbox outbox : outboxes.values()) {
+            outbox.close();
+        }
+        outboxes.clear();
+        ready.clear();
+    }
+
+    public void enqueue(Player player, EncodedFrame frame) {
+        PlayerOutbox outbox = outboxes.computeIfAbsent(player, PlayerOutbox::new);
+        if (outbox.offer(frame, plugin.getPluginConfig().getOutboundMaxPlayerPendingBytes())) {
+            ready.add(outbox);
+        }
+    }
+
+    public void enqueue(Iterable<Player> players, EncodedFrame frame) {
+        for (Player player : players) {
+            enqueue(player, frame);
+        }
+    }
+
+    /**
+     * Drop everything pending for a player that left.
+     */
+    public void remove(Player player) {
+        PlayerOutbox outbox = outboxes.remove(player);
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    private void drain() {
+        int maxMessages = plugin.getPluginConfig().getOutboundMaxMessagesPerTick();
+        long maxBytes = plugin.getPluginConfig().getOutboundMaxBytesPerTick();
+        long maxPlayerBytes = plugin.getPluginConfig().getOutboundMaxPlayerBytesPerTick();
+        long start = System.nanoTime();
+        int messages = 0;
+        long bytes = 0;
+
+        tickMonitor.onTick(start);
+        double maxInterval = plugin.getPluginConfig().getLoadSheddingMaxTickIntervalMs();
+        boolean lagging = maxInterval > 0 && tickMonitor.getAverageIntervalMs() > maxInterval;
+        overloadedTicks = lagging ? overloadedTicks + 1 : 0;
+        if (lagging) {
+            deferredTicks++;
+        }
+        boolean shedding = lagging && overloadedTicks > plugin.getPluginConfig().getLoadSheddingMaxDeferTicks();
+
+        // Every outbox is visited at most once per tick; unfinished ones go to the back
+        List<PlayerOutbox> unfinished = new ArrayList<>();
+        PlayerOutbox outbox;
+        while (messages < maxMessages && (messages == 0 || bytes < maxBytes) && (outbox = ready.poll()) != null) {
+            if (!outbox.player.isOnline()) {
+                remove(outbox.player);
+                continue;
+            }
+            if (shedding) {
+                outbox.shed();
+            }
+            long playerBytes = 0;
+            EncodedFrame frame;
+            while (messages < maxMessages) {
+                long remaining = Math.min(maxBytes - bytes, maxPlayerBytes - playerBytes);
+                // Always let a player's first frame through so an oversized frame cannot stall it
+                frame = outbox.poll(playerBytes == 0 ? Long.MAX_VALUE : remaining, lagging);
+                if (frame == null) {
+                    break;
+                }
+                messages++;
+                bytes += frame.length();
+                playerBytes += frame.length();
+                send(outbox.player, frame);
+            }
+            if (outbox.markIdleIfEmpty()) {
+                continue;
+            }
+            unfinished.add(outbox);
+        }
+        ready.addAll(unfinished);
+
+        if (messages > 0) {
+            totalMessages += messages;
+            totalBytes += bytes;
+        }
+        lastTickMessages = messages;
+        lastTickBytes = bytes;
+        lastTickNanos = System.nanoTime() - start;
+    }
+
+    private void send(Player player, EncodedFrame frame) {
+        PacketType type = frame.getType();
+        try {
+            player.sendPluginMessage(plugin, type.getFullChannelName(), frame.data());
+            sentListener.accept(player, frame);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to send packet " + type.name() + " to " + player.getName() + ": " + e.getMessage());
+        }
+    }
+
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    public long getDeferredTicks() {
+        return deferredTicks;
+    }
+
+    /**
+     * Whether low-priority frames are currently held back.
+     */
+    public boolean isDeferring() {
+        return overloadedTicks > 0;
+    }
+
+    public TickMonitor getTickMonitor() {
+        return tickMonitor;
+    }
+
+    public long getTotalMessages() {
+        return totalMessages;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public int getLastTickMessages() {
+        return lastTickMessages;
+    }
+
+    public long getLastTickBytes() {
+        return lastTickBytes;
+    }
+
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    /**
+     * Pending frames of a single player.
+     */
+    final class PlayerOutbox {
+        private final Player player;
+        private final ArrayDeque<EncodedFrame> urgent = new ArrayDeque<>();
+        private final EnumMap<PacketType, ArrayDeque<EncodedFrame>> latest = new EnumMap<>(PacketType.class);
+        private final ArrayDeque<EncodedFrame> normal = new ArrayDeque<>();
+        private long bytes;
+        // Bytes of pending chunk parts, which the pending limit leaves alone
+        private long partBytes;
+        // Pending chunk parts of a queue snapshot; queue state waits until they are sent
+        private int queueParts;
+        // True while the outbox sits in the ready queue or is being drained
+        private boolean scheduled;
+        private boolean closed;
+
+        PlayerOutbox(Player player) {
+            this.player = player;
+        }
+
+        /**
+         * Add a frame to its lane, then drop the oldest ordinary frames beyond {@code pendingLimit} bytes.
+         *
+         * @return true if the outbox has to be put into the ready queue
+         */
+        synchronized boolean offer(EncodedFrame frame, long pendingLimit) {
+            if (closed) {
+                return false;
+            }
+            switch (laneOf(frame)) {
+                case URGENT -> urgent.add(frame);
+                case LATEST -> {
+                    ArrayDeque<EncodedFrame> pending = latest.computeIfAbsent(frame.getPayloadType(), k -> new ArrayDeque<>());
+                    if (frame.supersedesPending()) {
+                        while (!pending.isEmpty()) {
+                            coalesced.increment();
+                            forget(pending.poll());
+                        }
+                    }
+                    pending.add(frame);
+                }
+                case NORMAL -> normal.add(frame);
+            }
+            bytes += frame.length();
+            if (frame.isChunkPart()) {
+                partBytes += frame.length();
+                if (isQueueState(frame.getPayloadType())) {
+                    if (frame.supersedesPending()) {
+                        dropQueueState();
+                    }
+                    queueParts++;
+                }
+            }
+            pendingCount.incrementAndGet();
+            pendingBytes.addAndGet(frame.length());
+
+            // A transfer missing a part can never be reassembled, so only whole frames are dropped
+            Iterator<EncodedFrame> oldest = normal.iterator();
+            while (bytes - partBytes > pendingLimit && oldest.hasNext()) {
+                EncodedFrame pending = oldest.next();
+                if (pending.isChunkPart()) {
+                    continue;
+                }
+                oldest.remove();
+                dropped.increment();
+                forget(pending);
+            }
+
+            if (scheduled) {
+                return false;
+            }
+            scheduled = true;
+            return true;
+        }
+
+        /**
+         * Drop queue state that a snapshot sent in parts makes obsolete. Parts never coalesce the
+         * supersedable lane, so without this it would be delivered on top of the newer snapshot.
+         */
+        private void dropQueueState() {
+            Iterator<Map.Entry<PacketType, ArrayDeque<EncodedFrame>>> iterator = latest.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<PacketType, ArrayDeque<EncodedFrame>> entry = iterator.next();
+                if (isQueueState(entry.getKey())) {
+                    for (EncodedFrame pending : entry.getValue()) {
+                        coalesced.increment();
+                        forget(pending);
+                    }
+                    iterator.remove();
+                }
+            }
+        }
+
+        /**
+         * Take the next frame if it fits into {@code budget} bytes, skipping low-priority
+         * frames while {@code deferLowPriority} is set.
+         */
+        synchronized EncodedFrame poll(long budget, boolean deferLowPriority) {
+            EncodedFrame frame = urgent.peek();
+            if (frame != null) {
+                return frame.length() <= budget ? take(urgent.poll()) : null;
+            }
+            Iterator<Map.Entry<PacketType, ArrayDeque<EncodedFrame>>> iterator = latest.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<PacketType, ArrayDeque<EncodedFrame>> entry = iterator.next();
+                if (deferLowPriority && isLowPriority(entry.getKey())) {
+                    continue;
+                }
+                // Queue state queued after a snapshot sent in parts applies to it, so it waits for its last part
+                if (queueParts > 0 && isQueueState(entry.getKey())) {
+                    continue;
+                }
+                ArrayDeque<EncodedFrame> pending = entry.getValue();
+                frame = pending.peek();
+                if (frame.length() > budget) {
+                    return null;
+                }
+                pending.poll();
+                if (pending.isEmpty()) {
+                    iterator.remove();
+                }
+                return take(frame);
+            }
+            // Deferred frames keep their order relative to each other and to the rest
+            Iterator<EncodedFrame> normalIterator = normal.iterator();
+            while (normalIterator.hasNext()) {
+                frame = normalIterator.next();
+                if (deferLowPriority && isLowPriority(frame.getPayloadType())) {
+                    continue;
+                }
+                if (frame.length() > budget) {
+                    return null;
+                }
+                normalIterator.remove();
+                return take(frame);
+            }
+            return null;
+        }
+
+        /**
+         * Drop pending responses that have waited out a long lag.
+         */
+        private synchronized void shed() {
+            Iterator<EncodedFrame> iterator = normal.iterator();
+            while (iterator.hasNext()) {
+                EncodedFrame frame = iterator.next();
+                if (!frame.isChunkPart() && isSheddable(frame.getPayloadType())) {
+                    iterator.remove();
+                    shed.increment();
+                    forget(frame);
+                }
+            }
+        }
+
+        /**
+         * Clear the scheduled flag if nothing is left, so the next offer reschedules it.
+         *
+         * @return true if the outbox is empty
+         */
+        private synchronized boolean markIdleIfEmpty() {
+            if (closed || (urgent.isEmpty() && latest.isEmpty() && normal.isEmpty())) {
+                scheduled = false;
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void close() {
+            closed = true;
+            urgent.forEach(this::forget);
+            latest.values().forEach(pending -> pending.forEach(this::forget));
+            normal.forEach(this::forget);
+            urgent.clear();
+            latest.clear();
+            normal.clear();
+        }
+
+        private EncodedFrame take(EncodedFrame frame) {
+            forget(frame);
+            return frame;
+        }
+
+        private void forget(EncodedFrame frame) {
+            bytes -= frame.length();
+            if (frame.isChunkPart()) {
+                partBytes -= frame.length();
+                if (isQueueState(frame.getPayloadType())) {
+                    queueParts--;
+                }
+            }
+            pendingCount.decrementAndGet();
+            pendingBytes.addAndGet(-frame.length());
+        }
+    }
+}
@@ -4,13 +4,23 @@ import icu.nyat.kusunoki.musicHud.beans.*;
 import icu.nyat.kusunoki.musicHud.beans.login.LoginCookieInfo;
 import icu.nyat.kusunoki.musicHud.beans.login.LoginType;
 import icu.nyat.kusunoki.musicHud.beans.user.Profile;
+import icu.nyat.kusunoki.musicHud.network.codec.*;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
 import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.ResourceLeakDetectorFactory;
 
 import java.nio.charset.StandardCharsets;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
 
 /**
  * Codec utilities for encoding/decoding data to/from ByteBuf.
@@ -19,6 +29,52 @@ import java.util.*;
 public class PacketCodecs {
     
     private static final int MAX_STRING_SIZE = 32767;
+    // Room reserved in front of a frame body for its VarInt length (max VarInt size)
+    private static final int FRAME_PREFIX_SIZE = 5;
+    
+    private static final LongAdder leaksDetected = new LongAdder();
+    private static volatile boolean leakDetectorInstalled = false;
+    private static volatile AllocatorMode allocatorMode = AllocatorMode.UNPOOLED;
+    private static volatile ByteBufAllocator allocator;
+    private static final FragmentCache fragments = new FragmentCache(256);
+    
+    /**
+     * Backing allocator for {@link #createBuffer()}.
+     */
+    public enum AllocatorMode {
+        POOLED,
+        UNPOOLED;
+        
+        /**
+         * The mode named {@code name}, ignoring case, or null if there is none.
+         */
+        public static AllocatorMode fromString(String name) {
+            if (name != null) {
+                for (AllocatorMode mode : values()) {
+                    if (mode.name().equalsIgnoreCase(name.trim())) {
+                        return mode;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+    
+    // Created on first use so no arenas are allocated in unpooled mode.
+    // Thread caches stay off for non-netty threads: packets are encoded on short-lived
+    // virtual threads, and a cache per thread would only add churn.
+    private static final class PooledHolder {
+        private static final PooledByteBufAllocator INSTANCE = new PooledByteBufAllocator(
+                false,
+                PooledByteBufAllocator.defaultNumHeapArena(),
+                0,
+                PooledByteBufAllocator.defaultPageSize(),
+                PooledByteBufAllocator.defaultMaxOrder(),
+                PooledByteBufAllocator.defaultSmallCacheSize(),
+                PooledByteBufAllocator.defaultNormalCacheSize(),
+                false
+        );
+    }
     
     // ==================== Primitive Types ====================
     
@@ -30,6 +86,15 @@ public class PacketCodecs {
         buf.writeByte(value);
     }
     
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value & -128) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+    
     public static int readVarInt(ByteBuf buf) {
         int result = 0;
         int shift = 0;
@@ -45,24 +110,84 @@ public class PacketCodecs {
         return result;
     }
     
+    /**
+     * Write a VarInt-prefixed UTF-8 string, encoding straight into the buffer.
+     * Strings that are guaranteed to fit a one-byte length get the length backfilled
+     * after encoding; longer ones are measured first so the prefix stays minimal.
+     */
     public static void writeString(ByteBuf buf, String str) {
         if (str == null) str = "";
-        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
-        if (bytes.length > MAX_STRING_SIZE) {
-            throw new RuntimeException("String too big: " + bytes.length + " > " + MAX_STRING_SIZE);
+        if (ByteBufUtil.utf8MaxBytes(str) < 128) {
+            int lengthIndex = buf.writerIndex();
+            buf.writeByte(0);
+            int written = ByteBufUtil.writeUtf8(buf, str);
+            buf.setByte(lengthIndex, written);
+            return;
         }
-        writeVarInt(buf, bytes.length);
-        buf.writeBytes(bytes);
+        int length = ByteBufUtil.utf8Bytes(str);
+        if (length > MAX_STRING_SIZE) {
+            throw new RuntimeException("String too big: " + length + " > " + MAX_STRING_SIZE);
+        }
+        writeVarInt(buf, length);
+        ByteBufUtil.reserveAndWriteUtf8(buf, str, length);
     }
     
+    /**
+     * Read a VarInt-prefixed UTF-8 string, decoding directly from the buffer contents.
+     */
     public static String readString(ByteBuf buf) {
         int length = readVarInt(buf);
         if (length > MAX_STRING_SIZE) {
             throw new RuntimeException("String too big: " + length + " > " + MAX_STRING_SIZE);
         }
-        byte[] bytes = new byte[length];
-        buf.readBytes(bytes);
-        return new String(bytes, StandardCharsets.UTF_8);
+        if (length > buf.readableBytes()) {
+            throw new RuntimeException("String length " + length + " exceeds available data (" + buf.readableBytes() + " bytes)");
+        }
+        return buf.readCharSequence(length, StandardCharsets.UTF_8).toString();
+    }
+    
+    /**
+     * Cut a string down to the codec's string limit, so long texts such as lyric files
+     * are shortened instead of failing the whole packet. Cuts at the last line break
+     * that fits, or at a character boundary if there is none.
+     */
+    public static String fitString(String str) {
+        // Three bytes per UTF-16 unit is the worst case, so short strings skip the measurement
+        if (str == null || str.length() <= MAX_STRING_SIZE / 3) {
+            return str;
+        }
+        if (ByteBufUtil.utf8Bytes(str) <= MAX_STRING_SIZE) {
+            return str;
+        }
+        int bytes = 0;
+        int end = 0;
+        while (end < str.length()) {
+            char c = str.charAt(end);
+            int charBytes;
+            int charLength = 1;
+            if (c < 0x80) {
+                charBytes = 1;
+            } else if (c < 0x800) {
+                charBytes = 2;
+            } else if (Character.isHighSurrogate(c) && end + 1 < str.length() && Character.isLowSurrogate(str.charAt(end + 1))) {
+                charBytes = 4;
+                charLength = 2;
+            } else {
+                charBytes = 3;
+            }
+            if (bytes + charBytes > MAX_STRING_SIZE) {
+                break;
+            }
+            bytes += charBytes;
+            end += charLength;
+        }
+        int lineEnd = str.lastIndexOf('\n', end - 1);
+        return str.substring(0, lineEnd > 0 ? lineEnd + 1 : end);
+    }
+    
+    public static int sizeOfString(String str) {
+        int length = str == null ? 0 : ByteBufUtil.utf8Bytes(str);
+        return varIntSize(length) + length;
     }
 
     // ==================== Login Cookie Info ====================
@@ -89,19 +214,15 @@ public class PacketCodecs {
     // ==================== Profile ====================
 
     public static void writeProfile(ByteBuf buf, Profile profile) {
-        writeString(buf, profile.getNickname());
-        writeString(buf, profile.getAvatarUrl());
-        writeString(buf, profile.getBackgroundUrl());
-        writeLong(buf, profile.getUserId());
+        ProfileCodec.write(buf, profile);
     }
 
     public static Profile readProfile(ByteBuf buf) {
-        return new Profile(
-                readString(buf),
-                readString(buf),
-                readString(buf),
-                readLong(buf)
-        );
+        return ProfileCodec.read(buf);
+    }
+    
+    public static int sizeOfProfile(Profile profile) {
+        return ProfileCodec.sizeOf(profile);
     }
     
     public static void writeLong(ByteBuf buf, long value) {
@@ -231,12 +352,20 @@ public class PacketCodecs {
         return ZonedDateTime.of(year, month, day, hour, minute, second, 0, ZoneId.of(zoneId));
     }
     
+    public static int sizeOfZonedDateTime(ZonedDateTime dateTime) {
+        return 7 * Integer.BYTES + ByteBufUtil.utf8Bytes(dateTime.getZone().getId());
+    }
+    
     // ==================== Enums ====================
     
     public static <E extends Enum<E>> void writeEnum(ByteBuf buf, E value) {
         writeVarInt(buf, value.ordinal());
     }
     
+    public static int sizeOfEnum(Enum<?> value) {
+        return varIntSize(value.ordinal());
+    }
+    
     public static <E extends Enum<E>> E readEnum(ByteBuf buf, Class<E> enumClass) {
         int ordinal = readVarInt(buf);
         E[] constants = enumClass.getEnumConstants();
@@ -265,6 +394,14 @@ public class PacketCodecs {
         return list;
     }
     
+    public static int sizeOfStringList(List<String> list) {
+        int size = Integer.BYTES;
+        for (String str : list) {
+            size += sizeOfString(str);
+        }
+        return size;
+    }
+    
     // ==================== Version ====================
     
     /**
@@ -287,15 +424,31 @@ public class PacketCodecs {
         return Version.fromLongArray(array);
     }
     
+    // ==================== Capabilities ====================
+    // Format: [VarInt bits], appended to CONNECT_REQUEST after the version by clients that have any
+    
+    public static void writeCapabilities(ByteBuf buf, Set<ClientCapability> capabilities) {
+        writeVarInt(buf, ClientCapability.toBits(capabilities));
+    }
+    
+    /**
+     * Read the advertised capabilities, or none if the client sent no bit set.
+     */
+    public static Set<ClientCapability> readCapabilities(ByteBuf buf) {
+        if (!buf.isReadable()) {
+            return EnumSet.noneOf(ClientCapability.class);
+        }
+        return ClientCapability.fromBits(readVarInt(buf));
+    }
+    
     // ==================== Artist ====================
     
     public static void writeArtist(ByteBuf buf, Artist artist) {
-        writeLong(buf, artist.getId());
-        writeString(buf, artist.getName());
+        ArtistCodec.write(buf, artist);
     }
     
     public static Artist readArtist(ByteBuf buf) {
-        return new Artist(readLong(buf), readString(buf));
+        return ArtistCodec.read(buf);
     }
     
     public static void writeArtistList(ByteBuf buf, List<Artist> artists) {
@@ -314,121 +467,163 @@ public class PacketCodecs {
         return list;
     }
     
+    public static int sizeOfArtistList(List<Artist> artists) {
+        int size = Integer.BYTES;
+        for (Artist artist : artists) {
+            size += ArtistCodec.sizeOf(artist);
+        }
+        return size;
+    }
+    
     // ==================== AlbumInfo ====================
     
     public static void writeAlbumInfo(ByteBuf buf, AlbumInfo album) {
-        writeLong(buf, album.getId());
-        writeString(buf, album.getName());
-        writeString(buf, album.getPicUrl());
-        writeLong(buf, album.getPicSize());
+        AlbumInfoCodec.write(buf, album);
     }
     
     public static AlbumInfo readAlbumInfo(ByteBuf buf) {
-        return new AlbumInfo(
-            readLong(buf),
-            readString(buf),
-            readString(buf),
-            readLong(buf)
-        );
+        return AlbumInfoCodec.read(buf);
+    }
+    
+    public static int sizeOfAlbumInfo(AlbumInfo album) {
+        return AlbumInfoCodec.sizeOf(album);
     }
     
     // ==================== PusherInfo ====================
     
     public static void writePusherInfo(ByteBuf buf, PusherInfo info) {
-        writeLong(buf, info.uid());
-        writeUUID(buf, info.playerUUID());
-        writeString(buf, info.playerName());
+        PusherInfoCodec.write(buf, info);
     }
     
     public static PusherInfo readPusherInfo(ByteBuf buf) {
-        return new PusherInfo(readLong(buf), readUUID(buf), readString(buf));
+        return PusherInfoCodec.read(buf);
+    }
+    
+    public static int sizeOfPusherInfo(PusherInfo info) {
+        return PusherInfoCodec.sizeOf(info);
     }
     
     // ==================== Lyric ====================
     
     public static void writeLyric(ByteBuf buf, Lyric lyric) {
-        writeInt(buf, lyric.getVersion());
-        writeString(buf, lyric.getLyric());
+        LyricCodec.write(buf, lyric);
     }
     
     public static Lyric readLyric(ByteBuf buf) {
-        return new Lyric(readInt(buf), readString(buf));
+        return LyricCodec.read(buf);
     }
     
     // ==================== LyricInfo ====================
     
     public static void writeLyricInfo(ByteBuf buf, LyricInfo info) {
-        writeLyric(buf, info.getLrc());
-        writeLyric(buf, info.getTlyric());
+        LyricInfoCodec.write(buf, info);
     }
     
     public static LyricInfo readLyricInfo(ByteBuf buf) {
-        return new LyricInfo(readLyric(buf), readLyric(buf));
+        return LyricInfoCodec.read(buf);
+    }
+    
+    public static int sizeOfLyricInfo(LyricInfo info) {
+        return LyricInfoCodec.sizeOf(info);
     }
     
     // ==================== MusicResourceInfo ====================
     
     public static void writeMusicResourceInfo(ByteBuf buf, MusicResourceInfo info) {
-        writeLong(buf, info.getId());
-        writeString(buf, info.getUrl());
-        writeInt(buf, info.getBitrate());
-        writeLong(buf, info.getSize());
-        writeEnum(buf, info.getType());
-        writeString(buf, info.getMd5());
-        writeEnum(buf, info.getFee());
-        writeInt(buf, info.getTime());
-        writeLyricInfo(buf, info.getLyricInfo());
+        writeMusicResourceInfo(buf, info, true);
+    }
+    
+    /**
+     * Write a MusicResourceInfo, replacing its lyrics with {@link LyricInfo#NONE} unless {@code withLyrics}.
+     */
+    public static void writeMusicResourceInfo(ByteBuf buf, MusicResourceInfo info, boolean withLyrics) {
+        MusicResourceInfoCodec.write(buf, info, !withLyrics);
     }
     
     public static MusicResourceInfo readMusicResourceInfo(ByteBuf buf) {
-        return new MusicResourceInfo(
-            readLong(buf),
-            readString(buf),
-            readInt(buf),
-            readLong(buf),
-            readEnum(buf, FormatType.class),
-            readString(buf),
-            readEnum(buf, Fee.class),
-            readInt(buf),
-            readLyricInfo(buf)
-        );
+        return MusicResourceInfoCodec.read(buf);
+    }
+    
+    public static int sizeOfMusicResourceInfo(MusicResourceInfo info) {
+        return sizeOfMusicResourceInfo(info, true);
+    }
+    
+    public static int sizeOfMusicResourceInfo(MusicResourceInfo info, boolean withLyrics) {
+        return MusicResourceInfoCodec.sizeOf(info, !withLyrics);
     }
     
     // ==================== MusicDetail ====================
     
     public static void writeMusicDetail(ByteBuf buf, MusicDetail detail) {
-        writeString(buf, detail.getName());
-        writeLong(buf, detail.getId());
-        writeArtistList(buf, detail.getArtists());
-        writeStringList(buf, detail.getAlias());
-        writeAlbumInfo(buf, detail.getAlbum());
-        writeInt(buf, detail.getDurationMillis());
-        writeStringList(buf, detail.getTranslations());
-        writePusherInfo(buf, detail.getPusherInfo());
-        writeMusicResourceInfo(buf, detail.getMusicResourceInfo());
+        writeMusicDetail(buf, detail, true);
+    }
+    
+    /**
+     * Write a MusicDetail; entries that are not playing yet can leave out their lyrics.
+     */
+    public static void writeMusicDetail(ByteBuf buf, MusicDetail detail, boolean withLyrics) {
+        if (!FragmentCache.isCacheable(detail)) {
+            writeMusicDetailFields(buf, detail, withLyrics);
+            return;
+        }
+        byte[] fragment = fragments.get(detail, withLyrics);
+        if (fragment != null) {
+            buf.writeBytes(fragment);
+            return;
+        }
+        int start = buf.writerIndex();
+        writeMusicDetailFields(buf, detail, withLyrics);
+        fragments.put(detail, withLyrics, ByteBufUtil.getBytes(buf, start, buf.writerIndex() - start));
+    }
+    
+    private static void writeMusicDetailFields(ByteBuf buf, MusicDetail detail, boolean withLyrics) {
+        MusicDetailCodec.write(buf, detail, !withLyrics);
     }
     
     public static MusicDetail readMusicDetail(ByteBuf buf) {
-        return new MusicDetail(
-            readString(buf),
-            readLong(buf),
-            readArtistList(buf),
-            readStringList(buf),
-            readAlbumInfo(buf),
-            readInt(buf),
-            readStringList(buf),
-            readPusherInfo(buf),
-            readMusicResourceInfo(buf)
-        );
+        return MusicDetailCodec.read(buf);
+    }
+    
+    /**
+     * Exact encoded size of a MusicDetail, used to allocate output buffers once.
+     */
+    public static int sizeOfMusicDetail(MusicDetail detail) {
+        return sizeOfMusicDetail(detail, true);
+    }
+    
+    public static int sizeOfMusicDetail(MusicDetail detail, boolean withLyrics) {
+        if (FragmentCache.isCacheable(detail)) {
+            byte[] fragment = fragments.peek(detail, withLyrics);
+            if (fragment != null) {
+                return fragment.length;
+            }
+        }
+        return MusicDetailCodec.sizeOf(detail, !withLyrics);
+    }
+    
+    public static int sizeOfMusicDetails(Collection<MusicDetail> details) {
+        return sizeOfMusicDetails(details, true);
+    }
+    
+    public static int sizeOfMusicDetails(Collection<MusicDetail> details, boolean withLyrics) {
+        int size = Integer.BYTES;
+        for (MusicDetail detail : details) {
+            size += sizeOfMusicDetail(detail, withLyrics);
+        }
+        return size;
     }
     
     // ==================== MusicDetail Queue ====================
     // Note: Mod's Codecs.ofQueue uses writeInt/readInt, NOT VarInt!
     
     public static void writeMusicDetailQueue(ByteBuf buf, Queue<MusicDetail> queue) {
+        writeMusicDetailQueue(buf, queue, true);
+    }
+    
+    public static void writeMusicDetailQueue(ByteBuf buf, Queue<MusicDetail> queue, boolean withLyrics) {
         writeInt(buf, queue.size());
         for (MusicDetail detail : queue) {
-            writeMusicDetail(buf, detail);
+            writeMusicDetail(buf, detail, withLyrics);
         }
     }
     
@@ -445,9 +640,13 @@ public class PacketCodecs {
     // Note: Mod's Codecs.ofList uses writeInt/readInt, NOT VarInt!
 
     public static void writeMusicDetailList(ByteBuf buf, List<MusicDetail> list) {
+        writeMusicDetailList(buf, list, true);
+    }
+
+    public static void writeMusicDetailList(ByteBuf buf, List<MusicDetail> list, boolean withLyrics) {
         writeInt(buf, list.size());
         for (MusicDetail detail : list) {
-            writeMusicDetail(buf, detail);
+            writeMusicDetail(buf, detail, withLyrics);
         }
     }
 
@@ -460,28 +659,83 @@ public class PacketCodecs {
         return list;
     }
 
+    // ==================== Queue Update ====================
+    // Format: [long version][byte op][op payload]
+
+    public static void writeQueueSnapshotUpdate(ByteBuf buf, long version, Queue<MusicDetail> queue, boolean withLyrics) {
+        writeLong(buf, version);
+        buf.writeByte(QueueDelta.Op.SNAPSHOT.ordinal());
+        writeMusicDetailQueue(buf, queue, withLyrics);
+    }
+
+    public static void writeQueueDeltaUpdate(ByteBuf buf, long version, QueueDelta delta, boolean withLyrics) {
+        writeLong(buf, version);
+        buf.writeByte(delta.getOp().ordinal());
+        switch (delta.getOp()) {
+            case APPEND -> writeMusicDetailList(buf, delta.getAppended(), withLyrics);
+            case REMOVE_AT -> writeInt(buf, delta.getIndex());
+            case POP_HEAD -> {
+            }
+            case SNAPSHOT -> throw new IllegalArgumentException("Snapshots are written by writeQueueSnapshotUpdate");
+        }
+    }
+
+    public static int sizeOfQueueDeltaUpdate(QueueDelta delta, boolean withLyrics) {
+        int size = Long.BYTES + 1;
+        return switch (delta.getOp()) {
+            case APPEND -> size + sizeOfMusicDetails(delta.getAppended(), withLyrics);
+            case REMOVE_AT -> size + Integer.BYTES;
+            default -> size;
+        };
+    }
+
+    // ==================== Chunked Frame ====================
+    // Format: [long transferId][string channel][VarInt index][VarInt count][VarInt length][part bytes]
+
+    public static void writeChunk(ByteBuf buf, long transferId, String channel, int index, int count,
+                                  byte[] data, int offset, int length) {
+        writeLong(buf, transferId);
+        writeString(buf, channel);
+        writeVarInt(buf, index);
+        writeVarInt(buf, count);
+        writeVarInt(buf, length);
+        buf.writeBytes(data, offset, length);
+    }
+
+    public static int sizeOfChunk(String channel, int index, int count, int length) {
+        return Long.BYTES + sizeOfString(channel) + varIntSize(index) + varIntSize(count) + varIntSize(length) + length;
+    }
+
+    // ==================== Compressed Frame ====================
+    // Format: [string channel][byte method][VarInt uncompressed length][VarInt length][compressed bytes]
+
+    public static final byte COMPRESSION_DEFLATE = 1;
+
+    public static void writeCompressed(ByteBuf buf, String channel, byte method, int uncompressedLength,
+                                       byte[] data, int length) {
+        writeString(buf, channel);
+        buf.writeByte(method);
+        writeVarInt(buf, uncompressedLength);
+        writeVarInt(buf, length);
+        buf.writeBytes(data, 0, length);
+    }
+
+    public static int sizeOfCompressed(String channel, int uncompressedLength, int length) {
+        return sizeOfString(channel) + 1 + varIntSize(uncompressedLength) + varIntSize(length) + length;
+    }
+
     // ==================== Playlist ====================
 
     public static void writePlaylist(ByteBuf buf, Playlist playlist) {
-        writeLong(buf, playlist.getId());
-        writeString(buf, playlist.getName());
-        writeLong(buf, playlist.getCoverImgId());
-        writeString(buf, playlist.getCoverImgIdStr());
-        writeString(buf, playlist.getCoverImgUrl());
-        writeProfile(buf, playlist.getCreator());
-        writeMusicDetailList(buf, playlist.getTracks());
+        PlaylistCodec.write(buf, playlist);
     }
 
     public static Playlist readPlaylist(ByteBuf buf) {
-        return new Playlist(
-                readLong(buf),
-                readString(buf),
-                readLong(buf),
-            readString(buf),
-            readString(buf),
-                readProfile(buf),
-                readMusicDetailList(buf)
-        );
+        return PlaylistCodec.read(buf);
+    }
+
+    public static int sizeOfPlaylist(Playlist playlist) {
+        return PlaylistCodec.sizeOf(playlist, false);
     }
 
     public static void writePlaylistList(ByteBuf buf, List<Playlist> playlists) {
@@ -500,10 +754,125 @@ public class PacketCodecs {
         return list;
     }
     
+    public static int sizeOfPlaylistList(List<Playlist> playlists) {
+        int size = Integer.BYTES;
+        for (Playlist playlist : playlists) {
+            size += sizeOfPlaylist(playlist);
+        }
+        return size;
+    }
+    
     // ==================== Utility ====================
     
+    /**
+     * Select the allocator used by {@link #createBuffer()} and the leak detection level.
+     * The first call also installs a leak detector that counts reported leaks, so it should
+     * happen before any buffer is created.
+     */
+    public static synchronized void configureAllocator(AllocatorMode mode, String leakDetectionLevel, Logger logger) {
+        if (!leakDetectorInstalled) {
+            ResourceLeakDetectorFactory.setResourceLeakDetectorFactory(new CountingLeakDetectorFactory(logger));
+            leakDetectorInstalled = true;
+        }
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.parseLevel(leakDetectionLevel));
+        allocatorMode = mode;
+        allocator = mode == AllocatorMode.POOLED ? PooledHolder.INSTANCE : UnpooledByteBufAllocator.DEFAULT;
+    }
+    
+    /**
+     * Resize the encoded MusicDetail cache, dropping its entries; 0 disables it.
+     */
+    public static void configureFragmentCache(int maxEntries) {
+        fragments.resize(Math.max(0, maxEntries));
+    }
+    
+    public static int getFragmentCacheSize() {
+        return fragments.size();
+    }
+    
+    public static int getFragmentCacheCapacity() {
+        return fragments.getMaxEntries();
+    }
+    
+    public static long getFragmentCacheHits() {
+        return fragments.getHits();
+    }
+    
+    public static long getFragmentCacheMisses() {
+        return fragments.getMisses();
+    }
+    
+    public static long getFragmentCacheEvictions() {
+        return fragments.getEvictions();
+    }
+    
+    public static AllocatorMode getAllocatorMode() {
+        return allocatorMode;
+    }
+    
+    public static long getLeaksDetected() {
+        return leaksDetected.sum();
+    }
+    
+    /**
+     * Metrics of the pooled allocator, or null when running unpooled.
+     */
+    public static PooledByteBufAllocatorMetric getPooledMetric() {
+        return allocatorMode == AllocatorMode.POOLED ? PooledHolder.INSTANCE.metric() : null;
+    }
+    
+    /**
+     * Create a buffer from the configured allocator. The caller owns it and must release it.
+     */
     public static ByteBuf createBuffer() {
-        return Unpooled.buffer();
+        ByteBufAllocator current = allocator;
+        return current != null ? current.heapBuffer() : Unpooled.buffer();
+    }
+    
+    /**
+     * Create a buffer with room for {@code initialCapacity} bytes before it has to grow.
+     */
+    public static ByteBuf createBuffer(int initialCapacity) {
+        ByteBufAllocator current = allocator;
+        return current != null ? current.heapBuffer(initialCapacity) : Unpooled.buffer(initialCapacity);
+    }
+    
+    /**
+     * Create a buffer for an outbound frame. The first bytes are reserved for the
+     * VarInt length prefix, so the body can be written directly after them.
+     */
+    public static ByteBuf createFrameBuffer() {
+        ByteBuf buf = createBuffer();
+        buf.writeZero(FRAME_PREFIX_SIZE);
+        return buf;
+    }
+    
+    /**
+     * Create a frame buffer sized for a body of {@code bodySize} bytes, e.g. from the sizeOf methods.
+     */
+    public static ByteBuf createFrameBuffer(int bodySize) {
+        ByteBuf buf = createBuffer(FRAME_PREFIX_SIZE + bodySize);
+        buf.writeZero(FRAME_PREFIX_SIZE);
+        return buf;
+    }
+    
+    /**
+     * Backfill the length prefix of a buffer from {@link #createFrameBuffer()} and copy
+     * the framed bytes out. The prefix is written right-aligned against the body, so the
+     * returned array is the only copy made. Does not release the buffer.
+     */
+    public static byte[] toFramedByteArray(ByteBuf buf) {
+        int bodyStart = buf.readerIndex() + FRAME_PREFIX_SIZE;
+        int bodyLength = buf.writerIndex() - bodyStart;
+        int frameStart = bodyStart - varIntSize(bodyLength);
+        int writerIndex = buf.writerIndex();
+        buf.writerIndex(frameStart);
+        writeVarInt(buf, bodyLength);
+        buf.writerIndex(writerIndex);
+        
+        byte[] frame = new byte[writerIndex - frameStart];
+        buf.getBytes(frameStart, frame);
+        return frame;
     }
     
     public static byte[] toByteArray(ByteBuf buf) {
@@ -516,6 +885,37 @@ public class PacketCodecs {
         return Unpooled.wrappedBuffer(bytes);
     }
 
+    /**
+     * Leak detector factory whose detectors count every reported leak
+     * in addition to logging it through the plugin logger.
+     */
+    private static final class CountingLeakDetectorFactory extends ResourceLeakDetectorFactory {
+        private final Logger logger;
+        
+        private CountingLeakDetectorFactory(Logger logger) {
+            this.logger = logger;
+        }
+        
+        @Override
+        @SuppressWarnings("deprecation")
+        public <T> ResourceLeakDetector<T> newResourceLeakDetector(Class<T> resource, int samplingInterval, long maxActive) {
+            return new ResourceLeakDetector<>(resource, samplingInterval) {
+                @Override
+                protected void reportTracedLeak(String resourceType, String records) {
+                    leaksDetected.increment();
+                    logger.warning("LEAK: " + resourceType + ".release() was not called before it was garbage-collected." + records);
+                }
+                
+                @Override
+                protected void reportUntracedLeak(String resourceType) {
+                    leaksDetected.increment();
+                    logger.warning("LEAK: " + resourceType + ".release() was not called before it was garbage-collected. "
+                            + "Set network.leak-detection to advanced to see where it was accessed.");
+                }
+            };
+        }
+    }
+
     /**
      * Some clients (via networking wrappers) may prefix payloads with a VarInt length.
      * If the first VarInt equals the remaining readable bytes, skip it.
@@ -2,6 +2,9 @@ package icu.nyat.kusunoki.musicHud.network;
 
 import icu.nyat.kusunoki.musicHud.MusicHud;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Represents different packet types for MusicHud protocol.
  */
@@ -9,6 +12,7 @@ public enum PacketType {
     // C2S (Client to Server) - Push Messages
     ADD_PLAYLIST_TO_IDLE_PLAY_SOURCE("add_playlist_to_idle_play_source_message"),
     CLIENT_PUSH_MUSIC_TO_QUEUE("client_push_music_to_queue_message"),
+    CLIENT_PUSH_MUSICS_TO_QUEUE("client_push_musics_to_queue_message"),
     CLIENT_REMOVE_MUSIC_FROM_QUEUE("client_remove_music_from_queue_message"),
     LOGOUT("logout_message"),
     REMOVE_PLAYLIST_FROM_IDLE_PLAY_SOURCE("remove_playlist_from_idle_play_source_message"),
@@ -29,6 +33,10 @@ public enum PacketType {
     REFRESH_MUSIC_QUEUE("refresh_music_queue_message"),
     SWITCH_MUSIC("switch_music_message"),
     SYNC_CURRENT_PLAYING("sync_current_playing_message"),
+    PLAYBACK_POSITION("playback_position_message"),
+    MUSIC_QUEUE_UPDATE("music_queue_update_message"),
+    CHUNKED_FRAME("chunked_frame_message"),
+    COMPRESSED_FRAME("compressed_frame_message"),
     
     // S2C (Server to Client) - Response
     CONNECT_RESPONSE("connect_response"),
@@ -37,10 +45,21 @@ public enum PacketType {
     SEARCH_RESPONSE("search_response"),
     START_QR_LOGIN_RESPONSE("start_qr_login_response");
     
+    // Full channel name to type, built once so inbound lookups don't scan or allocate
+    private static final Map<String, PacketType> BY_FULL_CHANNEL_NAME = new HashMap<>();
+    
+    static {
+        for (PacketType type : values()) {
+            BY_FULL_CHANNEL_NAME.put(type.fullChannelName, type);
+        }
+    }
+    
     private final String channelName;
+    private final String fullChannelName;
     
     PacketType(String channelName) {
         this.channelName = channelName;
+        this.fullChannelName = MusicHud.MOD_ID + ":" + channelName;
     }
     
     public String getChannelName() {
@@ -48,20 +67,10 @@ public enum PacketType {
     }
     
     public String getFullChannelName() {
-        return MusicHud.MOD_ID + ":" + channelName;
+        return fullChannelName;
     }
     
     public static PacketType fromChannelName(String fullChannelName) {
-        String prefix = MusicHud.MOD_ID + ":";
-        if (!fullChannelName.startsWith(prefix)) {
-            return null;
-        }
-        String name = fullChannelName.substring(prefix.length());
-        for (PacketType type : values()) {
-            if (type.channelName.equals(name)) {
-                return type;
-            }
-        }
-        return null;
+        return BY_FULL_CHANNEL_NAME.get(fullChannelName);
     }
 }
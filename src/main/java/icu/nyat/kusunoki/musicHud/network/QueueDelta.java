@@ -0,0 +1,55 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import icu.nyat.kusunoki.musicHud.beans.MusicDetail;
+
+import java.util.List;
+
+/**
+ * A single queue mutation, carried by MUSIC_QUEUE_UPDATE to clients with {@link ClientCapability#QUEUE_DELTA}.
+ * Each delta moves the queue from version {@code v - 1} to {@code v}.
+ */
+public final class QueueDelta {
+    /**
+     * Wire operation codes, written as a single byte after the queue version.
+     */
+    public enum Op {
+        SNAPSHOT,
+        APPEND,
+        REMOVE_AT,
+        POP_HEAD
+    }
+
+    private final Op op;
+    private final int index;
+    private final List<MusicDetail> appended;
+
+    private QueueDelta(Op op, int index, List<MusicDetail> appended) {
+        this.op = op;
+        this.index = index;
+        this.appended = appended;
+    }
+
+    public static QueueDelta append(List<MusicDetail> appended) {
+        return new QueueDelta(Op.APPEND, -1, List.copyOf(appended));
+    }
+
+    public static QueueDelta removeAt(int index) {
+        return new QueueDelta(Op.REMOVE_AT, index, List.of());
+    }
+
+    public static QueueDelta popHead() {
+        return new QueueDelta(Op.POP_HEAD, -1, List.of());
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public List<MusicDetail> getAppended() {
+        return appended;
+    }
+}
@@ -0,0 +1,146 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import icu.nyat.kusunoki.musicHud.MusicHud;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets per player and message category, checked before an inbound packet is queued.
+ * <p>
+ * Each category holds up to its configured capacity and regains tokens at a fixed rate,
+ * so short bursts pass while a client spamming API-backed requests is cut off without
+ * a response and without ever reaching the backend.
+ */
+public class RateLimiter {
+    private static final Category[] CATEGORIES = Category.values();
+
+    private final MusicHud plugin;
+    private final Map<Player, Buckets> buckets = new ConcurrentHashMap<>();
+    private final Map<Category, LongAdder> dropped = new EnumMap<>(Category.class);
+
+    /**
+     * Inbound messages sharing one budget.
+     */
+    public enum Category {
+        // Login flows, each one starts a session or QR poll on the API
+        LOGIN,
+        // Searches and playlist lookups
+        LOOKUP,
+        // Queue and idle playlist edits
+        QUEUE,
+        // Everything else, e.g. the connect handshake
+        OTHER;
+
+        public String getConfigKey() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Burst size and refill rate of a category.
+     */
+    public record Budget(int capacity, double perSecond) {
+    }
+
+    public RateLimiter(MusicHud plugin) {
+        this.plugin = plugin;
+        for (Category category : CATEGORIES) {
+            dropped.put(category, new LongAdder());
+        }
+    }
+
+    public static Category categoryOf(PacketType type) {
+        return switch (type) {
+            case ANONYMOUS_LOGIN_REQUEST, COOKIE_LOGIN_REQUEST, START_QR_LOGIN_REQUEST,
+                 CANCEL_QR_LOGIN_REQUEST, LOGOUT -> Category.LOGIN;
+            case SEARCH_REQUEST, GET_USER_PLAYLIST_REQUEST, GET_PLAYLIST_DETAIL_REQUEST -> Category.LOOKUP;
+            case CLIENT_PUSH_MUSIC_TO_QUEUE, CLIENT_PUSH_MUSICS_TO_QUEUE, CLIENT_REMOVE_MUSIC_FROM_QUEUE, VOTE_SKIP_CURRENT_MUSIC,
+                 ADD_PLAYLIST_TO_IDLE_PLAY_SOURCE, REMOVE_PLAYLIST_FROM_IDLE_PLAY_SOURCE -> Category.QUEUE;
+            default -> Category.OTHER;
+        };
+    }
+
+    /**
+     * Take a token for an inbound packet.
+     *
+     * @return false if the player's budget for this packet's category is used up
+     */
+    public boolean tryAcquire(Player player, PacketType type) {
+        return tryAcquire(player, type, 1);
+    }
+
+    /**
+     * Take several tokens at once, for a packet that does the work of as many single ones.
+     * A cost above the category's capacity never passes, so sending it again does not help either.
+     *
+     * @return false if the player's budget for this packet's category cannot cover it
+     */
+    public boolean tryAcquire(Player player, PacketType type, int tokens) {
+        Category category = categoryOf(type);
+        Budget budget = plugin.getPluginConfig().getRateLimit(category);
+        if (budget == null) {
+            return true;
+        }
+        if (buckets.computeIfAbsent(player, p -> new Buckets()).tryAcquire(category, budget, tokens, System.nanoTime())) {
+            return true;
+        }
+        dropped.get(category).increment();
+        return false;
+    }
+
+    public void remove(Player player) {
+        buckets.remove(player);
+    }
+
+    public void clear() {
+        buckets.clear();
+    }
+
+    public long getDroppedCount(Category category) {
+        return dropped.get(category).sum();
+    }
+
+    public long getDroppedCount() {
+        long total = 0;
+        for (LongAdder adder : dropped.values()) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Buckets of a single player, filled lazily on every check.
+     */
+    private static final class Buckets {
+        private final double[] tokens = new double[CATEGORIES.length];
+        private final long[] updatedAt = new long[CATEGORIES.length];
+
+        private Buckets() {
+            Arrays.fill(tokens, Double.NaN);
+        }
+
+        private synchronized boolean tryAcquire(Category category, Budget budget, int count, long now) {
+            int i = category.ordinal();
+            double available;
+            if (Double.isNaN(tokens[i])) {
+                // First message of this category starts with a full bucket
+                available = budget.capacity();
+            } else {
+                available = Math.min(budget.capacity(), tokens[i] + (now - updatedAt[i]) / 1e9 * budget.perSecond());
+            }
+            updatedAt[i] = now;
+            if (available < count) {
+                tokens[i] = available;
+                return false;
+            }
+            tokens[i] = available - count;
+            return true;
+        }
+    }
+}
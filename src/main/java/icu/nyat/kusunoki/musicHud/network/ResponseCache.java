@@ -0,0 +1,86 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of encoded response frames that expire after a fixed time,
+ * so a response shared by many players is fetched and encoded once.
+ */
+public final class ResponseCache<K> {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile int maxEntries;
+    private volatile long ttlNanos;
+    private final LinkedHashMap<K, Entry> entries = new LinkedHashMap<>(32, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private record Entry(EncodedFrame frame, long expiresAt) {
+    }
+
+    ResponseCache(int maxEntries, long ttlMillis) {
+        configure(maxEntries, ttlMillis);
+    }
+
+    EncodedFrame get(K key) {
+        if (maxEntries <= 0) {
+            return null;
+        }
+        EncodedFrame frame = null;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt - System.nanoTime() > 0) {
+                    frame = entry.frame;
+                } else {
+                    entries.remove(key);
+                }
+            }
+        }
+        if (frame != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return frame;
+    }
+
+    void put(K key, EncodedFrame frame) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, new Entry(frame, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    /**
+     * Apply new limits and drop every cached response; 0 entries or 0 ms disables the cache.
+     */
+    void configure(int maxEntries, long ttlMillis) {
+        this.maxEntries = ttlMillis > 0 ? Math.max(0, maxEntries) : 0;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+}
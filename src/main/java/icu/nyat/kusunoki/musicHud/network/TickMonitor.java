@@ -0,0 +1,62 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the interval between consecutive runs of a repeating one-tick task. It is 50 ms on
+ * a healthy server and grows as the server falls behind, but it is not the tick duration
+ * (MSPT): a server spending 10 ms or 45 ms per tick shows the same 50 ms interval, so only
+ * lag beyond the 20 TPS budget shows up here.
+ * <p>
+ * Fed only from the main thread; the averages are published for other threads.
+ */
+public class TickMonitor {
+    private static final int WINDOW = 20;
+
+    private final long[] intervals = new long[WINDOW];
+    private int next;
+    private int samples;
+    private long sum;
+    private long lastTick;
+    private volatile double averageIntervalMs = 50.0;
+    private volatile long lastTickNanos;
+
+    /**
+     * Record the start of a tick.
+     */
+    void onTick(long now) {
+        if (lastTick != 0) {
+            long interval = now - lastTick;
+            sum += interval - intervals[next];
+            intervals[next] = interval;
+            next = (next + 1) % WINDOW;
+            samples = Math.min(samples + 1, WINDOW);
+            lastTickNanos = interval;
+            averageIntervalMs = sum / (double) samples / 1_000_000.0;
+        }
+        lastTick = now;
+    }
+
+    /**
+     * Forget the history, e.g. when the task restarts and the gap is not a real tick.
+     */
+    void reset() {
+        Arrays.fill(intervals, 0L);
+        next = 0;
+        samples = 0;
+        sum = 0;
+        lastTick = 0;
+        averageIntervalMs = 50.0;
+    }
+
+    /**
+     * Average milliseconds between ticks over the last second of ticks, never below 50 ms for long.
+     */
+    public double getAverageIntervalMs() {
+        return averageIntervalMs;
+    }
+
+    public double getLastIntervalMs() {
+        return lastTickNanos / 1_000_000.0;
+    }
+}
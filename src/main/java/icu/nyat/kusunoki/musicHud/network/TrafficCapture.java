@@ -0,0 +1,196 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import org.bukkit.entity.Player;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Opt-in ring buffer of inbound and outbound plugin messages, bounded by frame count and bytes,
+ * that can be written to a compact binary file and fed back through a {@link ChannelHandler}.
+ * <p>
+ * Recording only keeps references: outbound frames are immutable and shared already, and
+ * inbound arrays are never modified after they arrive. Disabled capture costs one volatile read.
+ */
+public class TrafficCapture {
+    private static final int MAGIC = 0x4D484350;
+    private static final int FORMAT_VERSION = 1;
+
+    private final ArrayDeque<CapturedFrame> frames = new ArrayDeque<>();
+    private volatile boolean enabled;
+    private int maxFrames;
+    private long maxBytes;
+    private long bytes;
+    private long evicted;
+
+    /**
+     * A single plugin message; {@code nanos} is on {@link System#nanoTime()}.
+     */
+    public record CapturedFrame(long nanos, boolean outbound, PacketType type, UUID playerId, String playerName, byte[] data) {
+    }
+
+    TrafficCapture(int maxFrames, long maxBytes) {
+        configure(maxFrames, maxBytes);
+    }
+
+    synchronized void configure(int maxFrames, long maxBytes) {
+        this.maxFrames = Math.max(1, maxFrames);
+        this.maxBytes = Math.max(1L, maxBytes);
+        trim();
+    }
+
+    void record(boolean outbound, PacketType type, Player player, byte[] data) {
+        if (!enabled) {
+            return;
+        }
+        CapturedFrame frame = new CapturedFrame(System.nanoTime(), outbound, type, player.getUniqueId(), player.getName(), data);
+        synchronized (this) {
+            frames.add(frame);
+            bytes += data.length;
+            trim();
+        }
+    }
+
+    private void trim() {
+        while (frames.size() > maxFrames || bytes > maxBytes) {
+            bytes -= frames.poll().data().length;
+            evicted++;
+        }
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized int size() {
+        return frames.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Frames pushed out of the buffer by newer ones since the last clear.
+     */
+    public synchronized long getEvictedCount() {
+        return evicted;
+    }
+
+    public synchronized void clear() {
+        frames.clear();
+        bytes = 0;
+        evicted = 0;
+    }
+
+    public synchronized List<CapturedFrame> snapshot() {
+        return new ArrayList<>(frames);
+    }
+
+    /**
+     * Write frames as a gzip-compressed file: type and player tables, then every frame with
+     * its time offset from the first one, direction, table indices and payload.
+     */
+    public static void write(Path file, List<CapturedFrame> frames) throws IOException {
+        Map<PacketType, Integer> types = new HashMap<>();
+        List<PacketType> typeTable = new ArrayList<>();
+        Map<UUID, Integer> players = new HashMap<>();
+        List<CapturedFrame> playerTable = new ArrayList<>();
+        for (CapturedFrame frame : frames) {
+            if (types.putIfAbsent(frame.type(), typeTable.size()) == null) {
+                typeTable.add(frame.type());
+            }
+            if (players.putIfAbsent(frame.playerId(), playerTable.size()) == null) {
+                playerTable.add(frame);
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeShort(typeTable.size());
+            for (PacketType type : typeTable) {
+                out.writeUTF(type.name());
+            }
+            out.writeInt(playerTable.size());
+            for (CapturedFrame frame : playerTable) {
+                out.writeLong(frame.playerId().getMostSignificantBits());
+                out.writeLong(frame.playerId().getLeastSignificantBits());
+                out.writeUTF(frame.playerName());
+            }
+            out.writeInt(frames.size());
+            long start = frames.isEmpty() ? 0L : frames.get(0).nanos();
+            for (CapturedFrame frame : frames) {
+                out.writeLong(frame.nanos() - start);
+                out.writeBoolean(frame.outbound());
+                out.writeShort(types.get(frame.type()));
+                out.writeInt(players.get(frame.playerId()));
+                out.writeInt(frame.data().length);
+                out.write(frame.data());
+            }
+        }
+    }
+
+    /**
+     * Read a file written by {@link #write}. Times start at 0 for the first frame.
+     */
+    public static List<CapturedFrame> read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a MusicHud capture: " + file);
+            }
+            int version = in.readUnsignedShort();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported capture version " + version);
+            }
+            PacketType[] typeTable = new PacketType[in.readUnsignedShort()];
+            for (int i = 0; i < typeTable.length; i++) {
+                String name = in.readUTF();
+                try {
+                    typeTable[i] = PacketType.valueOf(name);
+                } catch (IllegalArgumentException e) {
+                    // Captured by a newer plugin version; frames of this type are skipped
+                    typeTable[i] = null;
+                }
+            }
+            int playerCount = in.readInt();
+            UUID[] playerIds = new UUID[playerCount];
+            String[] playerNames = new String[playerCount];
+            for (int i = 0; i < playerCount; i++) {
+                playerIds[i] = new UUID(in.readLong(), in.readLong());
+                playerNames[i] = in.readUTF();
+            }
+            int count = in.readInt();
+            List<CapturedFrame> frames = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long nanos = in.readLong();
+                boolean outbound = in.readBoolean();
+                PacketType type = typeTable[in.readUnsignedShort()];
+                int player = in.readInt();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                if (type != null) {
+                    frames.add(new CapturedFrame(nanos, outbound, type, playerIds[player], playerNames[player], data));
+                }
+            }
+            return frames;
+        }
+    }
+}
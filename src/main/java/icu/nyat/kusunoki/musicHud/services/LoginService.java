@@ -7,6 +7,7 @@ import icu.nyat.kusunoki.musicHud.beans.login.LoginCookieInfo;
 import icu.nyat.kusunoki.musicHud.beans.login.LoginType;
 import icu.nyat.kusunoki.musicHud.beans.user.Profile;
 import icu.nyat.kusunoki.musicHud.http.ApiClient;
+import icu.nyat.kusunoki.musicHud.http.Deadline;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -16,7 +17,9 @@ import org.bukkit.event.player.PlayerQuitEvent;
 import java.time.ZonedDateTime;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service for managing player login states.
@@ -39,38 +42,49 @@ public class LoginService implements Listener {
     }
     
     /**
-     * Mark a player as connected but not logged in.
+     * Mark a player as connected but not logged in, unless a login finished first.
+     * Joins are batched, so a quick cookie or anonymous login can complete before this runs.
      */
     public void joinUnlogged(Player player) {
         unloggedPlayers.add(player);
-        plugin.logDebug("Player %s joined as unlogged", player.getName());
+        // Logins add to loggedInPlayers before removing from unloggedPlayers, so checking after adding cannot miss one
+        if (loggedInPlayers.containsKey(player)) {
+            unloggedPlayers.remove(player);
+            return;
+        }
+        plugin.logDebug(() -> "Player " + player.getName() + " joined as unlogged");
     }
     
     /**
      * Handle anonymous login request.
      */
     public void anonymousLogin(Player player) {
-        plugin.getExecutor().execute(() -> {
-            try {
-                String baseUrl = plugin.getPluginConfig().getApiBaseUrl();
-                int timeout = plugin.getPluginConfig().getApiTimeout();
-                JsonNode response = ApiClient.post(baseUrl, "/register/anonimous", null, null, null, timeout);
-                String cookie = response.path("cookie").asText("");
-                if (cookie.isEmpty()) {
-                    plugin.getChannelHandler().sendLoginResult(player, false, "匿名登录失败", PlayerLoginInfo.unlogged());
-                    return;
-                }
-                LoginCookieInfo loginCookieInfo = new LoginCookieInfo(LoginType.ANONYMOUS, cookie, ZonedDateTime.now());
-                Profile profile = loadProfile(baseUrl, timeout, cookie);
-                PlayerLoginInfo loginInfo = new PlayerLoginInfo(loginCookieInfo, profile, true);
-                loggedInPlayers.put(player, loginInfo);
-                unloggedPlayers.remove(player);
-                plugin.getChannelHandler().sendLoginResult(player, true, "匿名登录成功", loginInfo);
-                plugin.getLogger().info(player.getName() + " logged in anonymously");
-            } catch (Exception e) {
+        String baseUrl = plugin.getPluginConfig().getApiBaseUrl();
+        Deadline deadline = plugin.getPluginConfig().newApiDeadline();
+        CompletableFuture<PlayerLoginInfo> login = ApiClient.postAsync(baseUrl, "/register/anonimous", null, null, null, deadline.requestTimeout())
+                .thenCompose(response -> {
+                    String cookie = response.path("cookie").asText("");
+                    if (cookie.isEmpty()) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    LoginCookieInfo loginCookieInfo = new LoginCookieInfo(LoginType.ANONYMOUS, cookie, ZonedDateTime.now());
+                    return loadProfileAsync(baseUrl, deadline, cookie)
+                            .thenApply(profile -> new PlayerLoginInfo(loginCookieInfo, profile, true));
+                });
+        deadline.bound(login).handle((info, e) -> {
+            if (info == null) {
                 plugin.getChannelHandler().sendLoginResult(player, false, "匿名登录失败", PlayerLoginInfo.unlogged());
-                plugin.getLogger().warning("Anonymous login failed: " + e.getMessage());
+                if (e != null) {
+                    plugin.getLogger().warning("Anonymous login failed: " + ApiClient.unwrap(e).getMessage());
+                }
+                return null;
             }
+            finishLogin(player, info, "匿名登录成功");
+            plugin.getLogger().info(player.getName() + " logged in anonymously");
+            return null;
+        }).exceptionally(e -> {
+            plugin.getLogger().warning("Finishing anonymous login of " + player.getName() + " failed: " + ApiClient.unwrap(e).getMessage());
+            return null;
         });
     }
     
@@ -78,32 +92,45 @@ public class LoginService implements Listener {
      * Handle cookie login request.
      */
     public void cookieLogin(Player player, LoginCookieInfo loginCookieInfo, boolean tryRefresh) {
-        plugin.getExecutor().execute(() -> {
-            try {
-                String baseUrl = plugin.getPluginConfig().getApiBaseUrl();
-                int timeout = plugin.getPluginConfig().getApiTimeout();
-                String cookie = loginCookieInfo.getRawCookie();
-                if (tryRefresh) {
-                    JsonNode refresh = ApiClient.post(baseUrl, "/login/refresh", null, null, cookie, timeout);
+        String baseUrl = plugin.getPluginConfig().getApiBaseUrl();
+        Deadline deadline = plugin.getPluginConfig().newApiDeadline();
+        String original = loginCookieInfo.getRawCookie();
+        CompletableFuture<String> cookie = tryRefresh
+                ? ApiClient.postAsync(baseUrl, "/login/refresh", null, null, original, deadline.requestTimeout()).thenApply(refresh -> {
                     String refreshed = refresh.path("cookie").asText("");
-                    if (!refreshed.isEmpty()) {
-                        cookie = refreshed;
-                    }
-                }
-                LoginCookieInfo effective = new LoginCookieInfo(loginCookieInfo.getType(), cookie, ZonedDateTime.now());
-                Profile profile = loadProfile(baseUrl, timeout, cookie);
-                PlayerLoginInfo info = new PlayerLoginInfo(effective, profile, effective.getType() == LoginType.ANONYMOUS);
-                loggedInPlayers.put(player, info);
-                unloggedPlayers.remove(player);
-                plugin.getChannelHandler().sendLoginResult(player, true, "登录成功", info);
-                plugin.getLogger().info(player.getName() + " logged in with cookie");
-            } catch (Exception e) {
+                    return refreshed.isEmpty() ? original : refreshed;
+                })
+                : CompletableFuture.completedFuture(original);
+        CompletableFuture<PlayerLoginInfo> login = cookie.thenCompose(effectiveCookie -> {
+            LoginCookieInfo effective = new LoginCookieInfo(loginCookieInfo.getType(), effectiveCookie, ZonedDateTime.now());
+            return loadProfileAsync(baseUrl, deadline, effectiveCookie)
+                    .thenApply(profile -> new PlayerLoginInfo(effective, profile, effective.getType() == LoginType.ANONYMOUS));
+        });
+        deadline.bound(login).handle((info, e) -> {
+            if (e != null) {
                 plugin.getChannelHandler().sendLoginResult(player, false, "登录失败", PlayerLoginInfo.unlogged());
-                plugin.getLogger().warning("Cookie login failed: " + e.getMessage());
+                plugin.getLogger().warning("Cookie login failed: " + ApiClient.unwrap(e).getMessage());
+                return null;
             }
+            finishLogin(player, info, "登录成功");
+            plugin.getLogger().info(player.getName() + " logged in with cookie");
+            return null;
+        }).exceptionally(e -> {
+            plugin.getLogger().warning("Finishing cookie login of " + player.getName() + " failed: " + ApiClient.unwrap(e).getMessage());
+            return null;
         });
     }
 
+    /**
+     * Record a successful login and tell the client. Runs after the login's deadline stage, so a
+     * late response never logs in a player who was already told the login failed.
+     */
+    private void finishLogin(Player player, PlayerLoginInfo info, String message) {
+        loggedInPlayers.put(player, info);
+        unloggedPlayers.remove(player);
+        plugin.getChannelHandler().sendLoginResult(player, true, message, info);
+    }
+
     /**
      * Handle QR login request.
      *
@@ -113,8 +140,8 @@ public class LoginService implements Listener {
         plugin.getExecutor().execute(() -> {
             try {
                 String baseUrl = plugin.getPluginConfig().getApiBaseUrl();
-                int timeout = plugin.getPluginConfig().getApiTimeout();
-                JsonNode keyResp = ApiClient.get(baseUrl, "/login/qr/key", Map.of("timestamp", String.valueOf(System.currentTimeMillis())), null, timeout);
+                Deadline deadline = plugin.getPluginConfig().newApiDeadline();
+                JsonNode keyResp = ApiClient.get(baseUrl, "/login/qr/key", Map.of("timestamp", String.valueOf(System.currentTimeMillis())), null, deadline.requestTimeout());
                 String key = keyResp.path("data").path("unikey").asText("");
                 if (key.isEmpty()) {
                     plugin.getChannelHandler().sendLoginResult(player, false, "获取二维码失败", PlayerLoginInfo.unlogged());
@@ -123,7 +150,7 @@ public class LoginService implements Listener {
                 ObjectNode body = com.fasterxml.jackson.databind.json.JsonMapper.builder().build().createObjectNode();
                 body.put("key", key);
                 body.put("qrimg", true);
-                JsonNode qrResp = ApiClient.post(baseUrl, "/login/qr/create", Map.of("timestamp", String.valueOf(System.currentTimeMillis())), body, null, timeout);
+                JsonNode qrResp = ApiClient.post(baseUrl, "/login/qr/create", Map.of("timestamp", String.valueOf(System.currentTimeMillis())), body, null, deadline.requestTimeout());
                 String qrImg = qrResp.path("data").path("qrimg").asText("");
                 if (!qrImg.isEmpty()) {
                     plugin.getChannelHandler().sendStartQrLoginResponse(player, qrImg);
@@ -140,7 +167,7 @@ public class LoginService implements Listener {
      * Handle QR login cancellation.
      */
     public void cancelQrLogin(Player player) {
-        plugin.logDebug("QR login canceled for %s", player.getName());
+        plugin.logDebug(() -> "QR login canceled for " + player.getName());
         qrPollingMap.remove(player);
     }
 
@@ -183,34 +210,45 @@ public class LoginService implements Listener {
         plugin.getExecutor().execute(task);
     }
 
+    /**
+     * Finish a confirmed QR login; the profile lookup gets a deadline of its own, since
+     * the scan before it may have taken minutes.
+     */
     private void completeLogin(Player player, String cookie, LoginType type) {
         String baseUrl = plugin.getPluginConfig().getApiBaseUrl();
-        int timeout = plugin.getPluginConfig().getApiTimeout();
-        Profile profile = loadProfile(baseUrl, timeout, cookie);
+        Deadline deadline = plugin.getPluginConfig().newApiDeadline();
+        Profile profile = loadProfile(baseUrl, deadline, cookie);
         LoginCookieInfo loginCookieInfo = new LoginCookieInfo(type, cookie, ZonedDateTime.now());
-        PlayerLoginInfo info = new PlayerLoginInfo(loginCookieInfo, profile, type == LoginType.ANONYMOUS);
-        loggedInPlayers.put(player, info);
-        unloggedPlayers.remove(player);
-        plugin.getChannelHandler().sendLoginResult(player, true, "", info);
+        finishLogin(player, new PlayerLoginInfo(loginCookieInfo, profile, type == LoginType.ANONYMOUS), "");
     }
 
-    private Profile loadProfile(String baseUrl, int timeout, String cookie) {
-        try {
-            JsonNode account = ApiClient.get(baseUrl, "/user/account", null, cookie, timeout);
-            JsonNode profileNode = account.path("profile");
-            if (!profileNode.isMissingNode() && !profileNode.isNull()) {
-                String nickname = profileNode.path("nickname").asText("anonymous");
-                String avatarUrl = profileNode.path("avatarUrl").asText("");
-                String backgroundUrl = profileNode.path("backgroundUrl").asText("");
-                long userId = profileNode.path("userId").asLong(0L);
-                return new Profile(nickname, avatarUrl, backgroundUrl, userId);
-            }
-            boolean anonymous = account.path("account").path("anonimousUser").asBoolean(false);
-            return anonymous ? Profile.ANONYMOUS : new Profile("anonymous", "", "", 0L);
-        } catch (Exception e) {
-            plugin.getLogger().warning("Failed to load profile: " + e.getMessage());
-            return Profile.ANONYMOUS;
-        }
+    private Profile loadProfile(String baseUrl, Deadline deadline, String cookie) {
+        return loadProfileAsync(baseUrl, deadline, cookie)
+                .completeOnTimeout(Profile.ANONYMOUS, deadline.remainingMillis(), TimeUnit.MILLISECONDS)
+                .join();
+    }
+
+    /**
+     * Profile of the account behind a cookie; completes with {@link Profile#ANONYMOUS} instead of failing.
+     */
+    private CompletableFuture<Profile> loadProfileAsync(String baseUrl, Deadline deadline, String cookie) {
+        return ApiClient.getAsync(baseUrl, "/user/account", null, cookie, deadline.requestTimeout())
+                .thenApply(account -> {
+                    JsonNode profileNode = account.path("profile");
+                    if (!profileNode.isMissingNode() && !profileNode.isNull()) {
+                        String nickname = profileNode.path("nickname").asText("anonymous");
+                        String avatarUrl = profileNode.path("avatarUrl").asText("");
+                        String backgroundUrl = profileNode.path("backgroundUrl").asText("");
+                        long userId = profileNode.path("userId").asLong(0L);
+                        return new Profile(nickname, avatarUrl, backgroundUrl, userId);
+                    }
+                    boolean anonymous = account.path("account").path("anonimousUser").asBoolean(false);
+                    return anonymous ? Profile.ANONYMOUS : new Profile("anonymous", "", "", 0L);
+                })
+                .exceptionally(e -> {
+                    plugin.getLogger().warning("Failed to load profile: " + ApiClient.unwrap(e).getMessage());
+                    return Profile.ANONYMOUS;
+                });
     }
     
     /**
@@ -222,13 +260,14 @@ public class LoginService implements Listener {
         
         plugin.getMusicPlayerService().onPlayerDisconnect(player);
         
-        plugin.logDebug("Player %s logged out", player.getName());
+        plugin.logDebug(() -> "Player " + player.getName() + " logged out");
     }
     
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerQuit(PlayerQuitEvent event) {
         Player player = event.getPlayer();
         logout(player);
+        plugin.getChannelHandler().onPlayerQuit(player);
     }
     
     /**
@@ -6,14 +6,25 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import icu.nyat.kusunoki.musicHud.beans.*;
 import icu.nyat.kusunoki.musicHud.beans.user.Profile;
 import icu.nyat.kusunoki.musicHud.http.ApiClient;
+import icu.nyat.kusunoki.musicHud.http.Deadline;
+import icu.nyat.kusunoki.musicHud.network.ChannelHandler;
+import icu.nyat.kusunoki.musicHud.network.ClientCapability;
+import icu.nyat.kusunoki.musicHud.network.EncodedFrame;
+import icu.nyat.kusunoki.musicHud.network.QueueDelta;
 import org.bukkit.entity.Player;
 
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
  * Service for managing music playback on the server.
@@ -21,6 +32,17 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class MusicPlayerService {
     private final MusicHud plugin;
     private final ArrayDeque<MusicDetail> musicQueue = new ArrayDeque<>();
+    // Guarded by musicQueue; bumped on every mutation
+    private long queueVersion = 0;
+    private volatile QueueSnapshot queueSnapshot = new QueueSnapshot(0, new ArrayDeque<>(), null);
+    // Recent snapshots with their deltas, guarded by musicQueue
+    private final ArrayDeque<QueueSnapshot> queueHistory = new ArrayDeque<>();
+    // Serializes queue sends so per-player versions match the order frames are enqueued
+    private final Object queueSendLock = new Object();
+    // Last queue version sent to each client, guarded by queueSendLock
+    // A frame is only enqueued if it is newer, since the LATEST lane keeps whichever came last
+    private final Map<Player, Long> sentQueueVersions = new HashMap<>();
+    private static final int QUEUE_HISTORY_SIZE = 32;
     private final Map<Player, Set<Playlist>> idlePlaySources = new ConcurrentHashMap<>();
     private final CurrentVoteInfo currentVoteInfo = new CurrentVoteInfo();
     private final Random random = new Random();
@@ -32,6 +54,7 @@ public class MusicPlayerService {
     
     private volatile MusicDetail currentMusicDetail = MusicDetail.NONE;
     private volatile ZonedDateTime nowPlayingStartTime = ZonedDateTime.now();
+    private volatile PlaybackTimeline timeline = PlaybackTimeline.IDLE;
     private volatile boolean running = false;
     private Thread pusherThread;
     
@@ -82,6 +105,7 @@ public class MusicPlayerService {
             try {
                 MusicDetail switchedToPlay = null;
                 MusicDetail nextMusicDetail = MusicDetail.NONE;
+                boolean queueChanged = false;
                 
                 Set<Player> connectedPlayers = plugin.getLoginService().getConnectedPlayers();
                 if (connectedPlayers.isEmpty()) {
@@ -115,8 +139,8 @@ public class MusicPlayerService {
                         }
                     } else {
                         switchedToPlay = musicQueue.poll();
-                        // Always send queue refresh to notify clients of the updated queue state
-                        sendRefreshQueueToAll();
+                        onQueueMutated(QueueDelta.popHead());
+                        queueChanged = true;
                     }
                     
                     if (!musicQueue.isEmpty()) {
@@ -126,11 +150,20 @@ public class MusicPlayerService {
                     }
                 }
                 
+                // Always send queue refresh to notify clients of the updated queue state
+                if (queueChanged) {
+                    sendRefreshQueueToAll();
+                }
+                
                 if (switchedToPlay == null || switchedToPlay.equals(MusicDetail.NONE)) {
                     Thread.sleep(1000);
                     continue;
                 }
                 
+                // The timeline starts when the switch goes out, so encoding and sending don't shift it
+                int duration = switchedToPlay.getDurationMillis();
+                PlaybackTimeline started = new PlaybackTimeline(switchedToPlay.getId(), duration, System.nanoTime());
+                
                 // Send switch music to all connected players
                 sendSwitchMusicToAll(switchedToPlay, nextMusicDetail, message);
                 message = "";
@@ -138,15 +171,15 @@ public class MusicPlayerService {
                 currentVoteInfo.resetTo(switchedToPlay);
                 currentMusicDetail = switchedToPlay;
                 nowPlayingStartTime = ZonedDateTime.now();
+                timeline = started;
                 
                 plugin.getLogger().info("Now playing: " + switchedToPlay.getName() + " (ID: " + switchedToPlay.getId() + ")");
                 
                 // Wait for song duration
-                int duration = switchedToPlay.getDurationMillis();
                 int interval = plugin.getPluginConfig().getPlaybackInterval();
                 
                 try {
-                    Thread.sleep(duration + interval);
+                    awaitTrackEnd(started, started.startNanos() + (duration + interval) * 1_000_000L);
                 } catch (InterruptedException e) {
                     // Song was skipped
                     message = "投票切歌通过";
@@ -154,7 +187,7 @@ public class MusicPlayerService {
                 }
                 
             } catch (InterruptedException e) {
-                // Thread interrupted, check if still running
+                // Shut down, or skipped while the next track was loading; the loop then loads it again
                 if (!running) break;
             } catch (Exception e) {
                 plugin.getLogger().warning("Error in music pusher: " + e.getMessage());
@@ -170,7 +203,42 @@ public class MusicPlayerService {
         }
     }
     
-    private Optional<MusicDetail> getRandomMusicFromIdleSources() {
+    /**
+     * Sleep until {@code deadline} on the monotonic clock, broadcasting the playback position
+     * every sync interval so clients can correct their drift.
+     */
+    private void awaitTrackEnd(PlaybackTimeline started, long deadline) throws InterruptedException {
+        long syncNanos = plugin.getPluginConfig().getPlaybackSyncIntervalSeconds() * 1_000_000_000L;
+        long nextSync = syncNanos > 0 ? started.startNanos() + syncNanos : Long.MAX_VALUE;
+        long now;
+        while ((now = System.nanoTime()) - deadline < 0) {
+            if (syncNanos > 0 && now - nextSync >= 0) {
+                broadcastPlaybackPosition(started);
+                nextSync += syncNanos;
+                continue;
+            }
+            TimeUnit.NANOSECONDS.sleep(syncNanos > 0 ? Math.min(deadline - now, nextSync - now) : deadline - now);
+        }
+    }
+    
+    private void broadcastPlaybackPosition(PlaybackTimeline current) {
+        long position = current.positionMillis();
+        if (position >= current.durationMillis()) {
+            return;
+        }
+        ChannelHandler channelHandler = plugin.getChannelHandler();
+        List<Player> players = new ArrayList<>();
+        for (Player player : plugin.getLoginService().getConnectedPlayers()) {
+            if (channelHandler.hasCapability(player, ClientCapability.SYNC_PLAYBACK_POSITION)) {
+                players.add(player);
+            }
+        }
+        if (!players.isEmpty()) {
+            channelHandler.sendFrameToPlayers(players, channelHandler.encodePlaybackPosition(current.musicId(), position));
+        }
+    }
+    
+    private Optional<MusicDetail> getRandomMusicFromIdleSources() throws InterruptedException {
         if (idlePlaySources.isEmpty()) {
             return Optional.empty();
         }
@@ -233,6 +301,39 @@ public class MusicPlayerService {
             return;
         }
         
+        setPusher(music, player);
+        appendToQueue(List.of(music));
+        
+        plugin.getLogger().info(player.getName() + " added music " + musicId + " to queue");
+    }
+    
+    /**
+     * Push several musics to the queue, resolved in batched API calls and appended as one change.
+     */
+    public void pushMusicsToQueue(List<Long> musicIds, Player player) {
+        if (musicIds.isEmpty()) {
+            return;
+        }
+        queueExecutor.execute(() -> {
+            pushMusicsToQueueInternal(musicIds, player);
+        });
+    }
+    
+    private void pushMusicsToQueueInternal(List<Long> musicIds, Player player) {
+        List<MusicDetail> musics = fetchMusicDetails(musicIds, player);
+        if (musics.isEmpty()) {
+            plugin.getLogger().warning("Failed to fetch music details for " + musicIds.size() + " IDs");
+            return;
+        }
+        for (MusicDetail music : musics) {
+            setPusher(music, player);
+        }
+        appendToQueue(musics);
+        
+        plugin.getLogger().info(player.getName() + " added " + musics.size() + " musics to queue");
+    }
+    
+    private void setPusher(MusicDetail music, Player player) {
         LoginService.PlayerLoginInfo loginInfo = plugin.getLoginService().getLoginInfo(player);
         if (loginInfo != null) {
                 music.setPusherInfo(new PusherInfo(
@@ -241,11 +342,14 @@ public class MusicPlayerService {
                     player.getName()
                 ));
         }
-        
+    }
+    
+    private void appendToQueue(List<MusicDetail> musics) {
         boolean wasRunning = running;
         
         synchronized (musicQueue) {
-            musicQueue.add(music);
+            musicQueue.addAll(musics);
+            onQueueMutated(QueueDelta.append(musics));
         }
         
         // Start music service if not running
@@ -258,8 +362,6 @@ public class MusicPlayerService {
         if (wasRunning) {
             sendRefreshQueueToAll();
         }
-        
-        plugin.getLogger().info(player.getName() + " added music " + musicId + " to queue");
     }
     
     /**
@@ -267,10 +369,19 @@ public class MusicPlayerService {
      */
     public void removeMusicFromQueue(long musicId, Player player) {
         synchronized (musicQueue) {
-            musicQueue.removeIf(m -> m.getId() == musicId);
+            int index = 0;
+            Iterator<MusicDetail> iterator = musicQueue.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getId() == musicId) {
+                    iterator.remove();
+                    onQueueMutated(QueueDelta.removeAt(index));
+                } else {
+                    index++;
+                }
+            }
         }
         sendRefreshQueueToAll();
-        plugin.logDebug("Player %s removed music %d from queue", player.getName(), musicId);
+        plugin.logDebug(() -> "Player " + player.getName() + " removed music " + musicId + " from queue");
     }
     
     /**
@@ -296,7 +407,7 @@ public class MusicPlayerService {
                 }
                 plugin.getLogger().info("Vote skip passed (" + current + "/" + required + ")");
             } else {
-                plugin.logDebug("Vote skip: %d/%d", current, required);
+                plugin.logDebug(() -> "Vote skip: " + current + "/" + required);
             }
         }
     }
@@ -318,7 +429,7 @@ public class MusicPlayerService {
             start();
         }
         
-        plugin.logDebug("Player %s added playlist %d to idle sources", player.getName(), playlistId);
+        plugin.logDebug(() -> "Player " + player.getName() + " added playlist " + playlistId + " to idle sources");
     }
     
     /**
@@ -332,7 +443,7 @@ public class MusicPlayerService {
                 idlePlaySources.remove(player);
             }
         }
-        plugin.logDebug("Player %s removed playlist %d from idle sources", player.getName(), playlistId);
+        plugin.logDebug(() -> "Player " + player.getName() + " removed playlist " + playlistId + " from idle sources");
     }
 
     /**
@@ -341,6 +452,9 @@ public class MusicPlayerService {
     public void onPlayerDisconnect(Player player) {
         idlePlaySources.remove(player);
         currentVoteInfo.removeVote(player);
+        synchronized (queueSendLock) {
+            sentQueueVersions.remove(player);
+        }
     }
 
     public List<MusicDetail> search(String query, Player player) {
@@ -425,6 +539,7 @@ public class MusicPlayerService {
             playlist.setCoverImgIdStr(playlistNode.path("coverImgId_str").asText(""));
             playlist.setCoverImgUrl(playlistNode.path("coverImgUrl").asText(""));
             playlist.setCreator(parseProfile(playlistNode.path("creator")));
+            playlist.setPrivacy(playlistNode.path("privacy").asInt(-1));
             JsonNode tracks = playlistNode.path("tracks");
             if (tracks.isArray()) {
                 List<MusicDetail> details = new ArrayList<>();
@@ -447,33 +562,143 @@ public class MusicPlayerService {
      * Send sync playing status to a player.
      */
     public void sendSyncPlayingStatusToPlayer(Player player) {
-        if (currentMusicDetail != null && !currentMusicDetail.equals(MusicDetail.NONE)) {
-            plugin.getChannelHandler().sendSyncCurrentPlaying(player, currentMusicDetail, nowPlayingStartTime);
-            
-            synchronized (musicQueue) {
-                if (!musicQueue.isEmpty()) {
-                    plugin.getChannelHandler().sendRefreshMusicQueue(player, musicQueue);
-                }
+        sendSyncPlayingStatusToPlayers(List.of(player));
+    }
+    
+    /**
+     * Send sync playing status to players joining together, sharing one encode of every frame.
+     */
+    public void sendSyncPlayingStatusToPlayers(Collection<Player> players) {
+        MusicDetail current = currentMusicDetail;
+        if (players.isEmpty() || current == null || current.equals(MusicDetail.NONE)) {
+            return;
+        }
+        ChannelHandler channelHandler = plugin.getChannelHandler();
+        channelHandler.sendFrameToPlayers(players, channelHandler.encodeSyncCurrentPlaying(current, nowPlayingStartTime));
+        
+        List<Player> positionPlayers = new ArrayList<>();
+        List<Player> deltaPlayers = new ArrayList<>();
+        List<Player> legacyPlayers = new ArrayList<>();
+        for (Player player : players) {
+            if (channelHandler.hasCapability(player, ClientCapability.SYNC_PLAYBACK_POSITION)) {
+                positionPlayers.add(player);
+            }
+            if (channelHandler.hasCapability(player, ClientCapability.QUEUE_DELTA)) {
+                deltaPlayers.add(player);
+            } else {
+                legacyPlayers.add(player);
+            }
+        }
+        
+        PlaybackTimeline playing = timeline;
+        if (!positionPlayers.isEmpty() && playing.musicId() == current.getId()) {
+            // SYNC_CURRENT_PLAYING only carries whole seconds
+            channelHandler.sendFrameToPlayers(positionPlayers, channelHandler.encodePlaybackPosition(playing.musicId(), playing.positionMillis()));
+        }
+        
+        synchronized (queueSendLock) {
+            QueueSnapshot snapshot = queueSnapshot;
+            if (!deltaPlayers.isEmpty()) {
+                // Always send a baseline so later deltas have a version to build on
+                channelHandler.sendFrameToPlayers(deltaPlayers, snapshot.snapshotUpdateFrame());
+            }
+            if (!legacyPlayers.isEmpty() && !snapshot.items.isEmpty()) {
+                channelHandler.sendFrameToPlayers(legacyPlayers, snapshot.frame());
+            }
+            for (Player player : players) {
+                sentQueueVersions.put(player, snapshot.version);
             }
         }
     }
     
     private void sendSwitchMusicToAll(MusicDetail music, MusicDetail next, String message) {
         Set<Player> players = plugin.getLoginService().getConnectedPlayers();
-        for (Player player : players) {
-            plugin.getChannelHandler().sendSwitchMusic(player, music, next, message);
+        if (players.isEmpty()) {
+            return;
         }
+        plugin.getChannelHandler().broadcastSwitchMusic(players, music, next, message);
     }
     
+    /**
+     * Bring every connected player up to the latest queue version. Clients with
+     * {@link ClientCapability#QUEUE_DELTA} get the deltas since the version they last saw,
+     * or a snapshot update if that chain is no longer available; older clients get the
+     * full REFRESH_MUSIC_QUEUE frame.
+     */
     private void sendRefreshQueueToAll() {
         Set<Player> players = plugin.getLoginService().getConnectedPlayers();
+        if (players.isEmpty()) {
+            return;
+        }
+        ChannelHandler channelHandler = plugin.getChannelHandler();
+        QueueSnapshot snapshot;
+        List<QueueSnapshot> history;
         synchronized (musicQueue) {
+            snapshot = queueSnapshot;
+            history = new ArrayList<>(queueHistory);
+        }
+        
+        List<Player> legacyPlayers = new ArrayList<>();
+        synchronized (queueSendLock) {
             for (Player player : players) {
-                plugin.getChannelHandler().sendRefreshMusicQueue(player, musicQueue);
+                // Another thread may already have sent a newer snapshot captured after ours
+                long known = sentQueueVersions.getOrDefault(player, -1L);
+                if (known >= snapshot.version) {
+                    continue;
+                }
+                if (!channelHandler.hasCapability(player, ClientCapability.QUEUE_DELTA)) {
+                    legacyPlayers.add(player);
+                    sentQueueVersions.put(player, snapshot.version);
+                    continue;
+                }
+                List<QueueSnapshot> chain = deltaChain(history, known, snapshot.version);
+                if (chain == null) {
+                    channelHandler.sendFrame(player, snapshot.snapshotUpdateFrame());
+                } else {
+                    for (QueueSnapshot step : chain) {
+                        channelHandler.sendFrame(player, step.deltaUpdateFrame());
+                    }
+                }
+                sentQueueVersions.put(player, snapshot.version);
+            }
+            if (!legacyPlayers.isEmpty()) {
+                channelHandler.sendFrameToPlayers(legacyPlayers, snapshot.frame());
             }
         }
     }
     
+    /**
+     * Consecutive snapshots leading from version {@code from} to {@code to}, or null if any step is missing.
+     */
+    private static List<QueueSnapshot> deltaChain(List<QueueSnapshot> history, long from, long to) {
+        if (from < 0) {
+            return null;
+        }
+        List<QueueSnapshot> chain = new ArrayList<>();
+        for (QueueSnapshot step : history) {
+            if (step.version <= from || step.version > to) {
+                continue;
+            }
+            if (step.version != from + chain.size() + 1) {
+                return null;
+            }
+            chain.add(step);
+        }
+        return chain.size() == to - from ? chain : null;
+    }
+    
+    /**
+     * Publish a new queue snapshot for a single mutation. Must be called while holding the musicQueue monitor.
+     */
+    private void onQueueMutated(QueueDelta delta) {
+        queueVersion++;
+        queueSnapshot = new QueueSnapshot(queueVersion, new ArrayDeque<>(musicQueue), delta);
+        queueHistory.addLast(queueSnapshot);
+        if (queueHistory.size() > QUEUE_HISTORY_SIZE) {
+            queueHistory.removeFirst();
+        }
+    }
+    
     public MusicDetail getCurrentMusicDetail() {
         return currentMusicDetail;
     }
@@ -482,16 +707,29 @@ public class MusicPlayerService {
         return nowPlayingStartTime;
     }
     
+    /**
+     * Milliseconds into the current track, measured on the monotonic clock.
+     */
+    public long getPlaybackPositionMillis() {
+        return timeline.positionMillis();
+    }
+    
     public Queue<MusicDetail> getMusicQueue() {
         return musicQueue;
     }
+    
+    public long getQueueVersion() {
+        return queueSnapshot.version;
+    }
 
     private MusicDetail fetchMusicDetail(long musicId, Player player) {
         try {
             String baseUrl = plugin.getPluginConfig().getApiBaseUrl();
-            int timeout = plugin.getPluginConfig().getApiTimeout();
-            JsonNode response = ApiClient.get(baseUrl, "/song/detail", Map.of("ids", String.valueOf(musicId)), null, timeout);
-            JsonNode songs = response.path("songs");
+            Deadline deadline = plugin.getPluginConfig().newApiDeadline();
+            // Detail, URL and lyrics are independent, so all three requests are in flight at once
+            CompletableFuture<JsonNode> response = ApiClient.getAsync(baseUrl, "/song/detail", Map.of("ids", String.valueOf(musicId)), null, deadline.requestTimeout());
+            CompletableFuture<MusicResourceInfo> resource = fetchResourceInfoAsync(musicId, player, deadline);
+            JsonNode songs = ApiClient.await(deadline.bound(response)).path("songs");
             if (!songs.isArray() || songs.isEmpty()) {
                 return null;
             }
@@ -499,7 +737,8 @@ public class MusicPlayerService {
             if (detail == null) {
                 return null;
             }
-            MusicResourceInfo resourceInfo = fetchResourceInfo(musicId, player);
+            // A track without a URL is still queued, as when the URL request fails
+            MusicResourceInfo resourceInfo = resource.completeOnTimeout(null, deadline.remainingMillis(), TimeUnit.MILLISECONDS).join();
             if (resourceInfo != null) {
                 detail.setMusicResourceInfo(resourceInfo);
             }
@@ -510,58 +749,200 @@ public class MusicPlayerService {
         }
     }
 
-    private MusicResourceInfo fetchResourceInfo(long musicId, Player player) {
+    /**
+     * URL and lyrics of a music for the pusher thread. The wait can be interrupted, so a skip
+     * is not held up by a slow API and does not hit the track started after the fetch instead.
+     */
+    private MusicResourceInfo fetchResourceInfo(long musicId, Player player) throws InterruptedException {
+        Deadline deadline = plugin.getPluginConfig().newApiDeadline();
+        CompletableFuture<MusicResourceInfo> resource = fetchResourceInfoAsync(musicId, player, deadline);
         try {
+            return resource.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (ExecutionException e) {
+            // Not expected, failures complete with null
+            return null;
+        } catch (InterruptedException e) {
+            resource.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * URL and lyrics of a music, fetched concurrently. Completes with null instead of failing.
+     */
+    private CompletableFuture<MusicResourceInfo> fetchResourceInfoAsync(long musicId, Player player, Deadline deadline) {
+        String baseUrl = plugin.getPluginConfig().getApiBaseUrl();
+        LoginService.PlayerLoginInfo loginInfo = plugin.getLoginService().getLoginInfo(player);
+        String cookie = loginInfo != null ? loginInfo.getLoginCookieInfo().getRawCookie() : null;
+        Map<String, String> query = new HashMap<>();
+        query.put("id", String.valueOf(musicId));
+        query.put("level", "lossless");
+        query.put("unblock", "true");
+        return ApiClient.getAsync(baseUrl, "/song/url/v1", query, cookie, deadline.requestTimeout())
+                .thenCombine(fetchLyricInfoAsync(musicId, cookie, deadline), (response, lyricInfo) -> {
+                    JsonNode data = response.path("data");
+                    if (!data.isArray() || data.isEmpty()) {
+                        return null;
+                    }
+                    MusicResourceInfo info = parseResourceInfo(data.get(0), musicId);
+                    info.setLyricInfo(lyricInfo);
+                    return info;
+                })
+                .exceptionally(e -> {
+                    plugin.getLogger().warning("Fetch resource info failed: " + ApiClient.unwrap(e).getMessage());
+                    return null;
+                });
+    }
+
+    /**
+     * Resolve several musics with one /song/detail and one /song/url/v1 call, both in flight at
+     * once; lyrics have no batch endpoint and are requested as soon as the URLs arrive, a few at
+     * a time. Unknown ids are skipped, repeated ones resolved once, order is kept. Lyrics still
+     * missing at the deadline are left out rather than failing the push.
+     * <p>
+     * Requests still in flight at the deadline complete on other threads while the details may
+     * already be queued and encoded, so fetched parts are only collected there and put into the
+     * beans here, before they are returned.
+     */
+    private List<MusicDetail> fetchMusicDetails(List<Long> requestedIds, Player player) {
+        try {
+            List<Long> musicIds = new ArrayList<>(new LinkedHashSet<>(requestedIds));
             String baseUrl = plugin.getPluginConfig().getApiBaseUrl();
-            int timeout = plugin.getPluginConfig().getApiTimeout();
+            Deadline deadline = plugin.getPluginConfig().newApiDeadline();
             LoginService.PlayerLoginInfo loginInfo = plugin.getLoginService().getLoginInfo(player);
             String cookie = loginInfo != null ? loginInfo.getLoginCookieInfo().getRawCookie() : null;
+            String ids = musicIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+
             Map<String, String> query = new HashMap<>();
-            query.put("id", String.valueOf(musicId));
+            query.put("id", ids);
             query.put("level", "lossless");
             query.put("unblock", "true");
-            JsonNode response = ApiClient.get(baseUrl, "/song/url/v1", query, cookie, timeout);
-            JsonNode data = response.path("data");
-            if (!data.isArray() || data.isEmpty()) {
-                return null;
+            CompletableFuture<JsonNode> songsResponse = ApiClient.getAsync(baseUrl, "/song/detail", Map.of("ids", ids), null, deadline.requestTimeout());
+            Map<Long, MusicResourceInfo> resources = new ConcurrentHashMap<>();
+            Map<Long, LyricInfo> lyrics = new ConcurrentHashMap<>();
+            CompletableFuture<Void> resourcesResponse = ApiClient.getAsync(baseUrl, "/song/url/v1", query, cookie, deadline.requestTimeout())
+                    .thenCompose(response -> {
+                        Map<Long, MusicResourceInfo> parsed = new HashMap<>();
+                        for (JsonNode item : response.path("data")) {
+                            long id = item.path("id").asLong(0L);
+                            parsed.put(id, parseResourceInfo(item, id));
+                        }
+                        if (deadline.isExpired()) {
+                            return CompletableFuture.<Void>completedFuture(null);
+                        }
+                        resources.putAll(parsed);
+                        return fetchLyricInfos(parsed.keySet(), lyrics, cookie, deadline);
+                    });
+
+            Map<Long, MusicDetail> details = new LinkedHashMap<>();
+            for (JsonNode song : ApiClient.await(deadline.bound(songsResponse)).path("songs")) {
+                MusicDetail detail = parseMusicDetail(song);
+                if (detail != null) {
+                    details.putIfAbsent(detail.getId(), detail);
+                }
+            }
+            if (details.isEmpty()) {
+                return List.of();
+            }
+            try {
+                ApiClient.await(deadline.bound(resourcesResponse));
+            } catch (RuntimeException e) {
+                // Tracks keep whatever URLs and lyrics arrived in time
+                plugin.getLogger().warning("Fetch music resources failed: " + ApiClient.unwrap(e).getMessage());
             }
-            JsonNode item = data.get(0);
-            MusicResourceInfo info = new MusicResourceInfo();
-            info.setId(item.path("id").asLong(musicId));
-            info.setUrl(item.path("url").asText(""));
-            info.setBitrate(item.path("br").asInt(0));
-            info.setSize(item.path("size").asLong(0));
-            info.setType(FormatType.fromString(item.path("type").asText("")));
-            info.setMd5(item.path("md5").asText(""));
-            info.setFee(Fee.fromCode(item.path("fee").asInt(-1)));
-            info.setTime(item.path("time").asInt(0));
-            LyricInfo lyricInfo = fetchLyricInfo(musicId, cookie);
-            info.setLyricInfo(lyricInfo != null ? lyricInfo : LyricInfo.NONE);
-            return info;
+
+            List<MusicDetail> result = new ArrayList<>(musicIds.size());
+            for (Long musicId : musicIds) {
+                MusicDetail detail = details.get(musicId);
+                if (detail == null) {
+                    continue;
+                }
+                MusicResourceInfo resourceInfo = resources.get(musicId);
+                if (resourceInfo != null) {
+                    LyricInfo lyricInfo = lyrics.get(musicId);
+                    if (lyricInfo != null) {
+                        resourceInfo.setLyricInfo(lyricInfo);
+                    }
+                    detail.setMusicResourceInfo(resourceInfo);
+                }
+                result.add(detail);
+            }
+            return result;
         } catch (Exception e) {
-            plugin.getLogger().warning("Fetch resource info failed: " + e.getMessage());
-            return null;
+            plugin.getLogger().warning("Fetch music details failed: " + e.getMessage());
+            return List.of();
         }
     }
 
-    private LyricInfo fetchLyricInfo(long musicId, String cookie) {
-        try {
-            String baseUrl = plugin.getPluginConfig().getApiBaseUrl();
-            int timeout = plugin.getPluginConfig().getApiTimeout();
-            JsonNode response = ApiClient.get(baseUrl, "/lyric/new", Map.of("id", String.valueOf(musicId)), cookie, timeout);
-            LyricInfo info = new LyricInfo();
-            info.setCode(response.path("code").asInt(0));
-            JsonNode lrc = response.path("lrc");
-            JsonNode tlyric = response.path("tlyric");
-            Lyric main = new Lyric(lrc.path("version").asInt(0), lrc.path("lyric").asText(""));
-            Lyric trans = new Lyric(tlyric.path("version").asInt(0), tlyric.path("lyric").asText(""));
-            info.setLrc(main);
-            info.setTlyric(trans);
-            return info;
-        } catch (Exception e) {
-            plugin.getLogger().warning("Fetch lyric failed: " + e.getMessage());
-            return LyricInfo.NONE;
+    private MusicResourceInfo parseResourceInfo(JsonNode item, long musicId) {
+        MusicResourceInfo info = new MusicResourceInfo();
+        info.setId(item.path("id").asLong(musicId));
+        info.setUrl(item.path("url").asText(""));
+        info.setBitrate(item.path("br").asInt(0));
+        info.setSize(item.path("size").asLong(0));
+        info.setType(FormatType.fromString(item.path("type").asText("")));
+        info.setMd5(item.path("md5").asText(""));
+        info.setFee(Fee.fromCode(item.path("fee").asInt(-1)));
+        info.setTime(item.path("time").asInt(0));
+        return info;
+    }
+
+    /**
+     * Lyrics of several musics into {@code lyrics}, with at most {@code api.max-concurrent-lyrics}
+     * requests in flight so a bulk push does not hit the API with one request per track at once.
+     */
+    private CompletableFuture<Void> fetchLyricInfos(Collection<Long> musicIds, Map<Long, LyricInfo> lyrics, String cookie, Deadline deadline) {
+        Queue<Long> pending = new ConcurrentLinkedQueue<>(musicIds);
+        int lanes = Math.min(musicIds.size(), plugin.getPluginConfig().getMaxConcurrentLyrics());
+        CompletableFuture<?>[] running = new CompletableFuture<?>[lanes];
+        for (int i = 0; i < lanes; i++) {
+            running[i] = fetchNextLyricInfo(pending, lyrics, cookie, deadline);
+        }
+        return CompletableFuture.allOf(running);
+    }
+
+    /**
+     * Fetch the next pending lyrics, then move on to the one after, until none are left or
+     * the deadline has passed. Lyrics arriving after the deadline are dropped, since nobody
+     * waits for them anymore.
+     */
+    private CompletableFuture<Void> fetchNextLyricInfo(Queue<Long> pending, Map<Long, LyricInfo> lyrics, String cookie, Deadline deadline) {
+        Long musicId = pending.poll();
+        if (musicId == null || deadline.isExpired()) {
+            return CompletableFuture.completedFuture(null);
         }
+        return fetchLyricInfoAsync(musicId, cookie, deadline).thenCompose(lyricInfo -> {
+            if (deadline.isExpired()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            lyrics.put(musicId, lyricInfo);
+            return fetchNextLyricInfo(pending, lyrics, cookie, deadline);
+        });
+    }
+
+    /**
+     * Lyrics of a music; completes with {@link LyricInfo#NONE} instead of failing.
+     */
+    private CompletableFuture<LyricInfo> fetchLyricInfoAsync(long musicId, String cookie, Deadline deadline) {
+        String baseUrl = plugin.getPluginConfig().getApiBaseUrl();
+        return ApiClient.getAsync(baseUrl, "/lyric/new", Map.of("id", String.valueOf(musicId)), cookie, deadline.requestTimeout())
+                .thenApply(response -> {
+                    LyricInfo info = new LyricInfo();
+                    info.setCode(response.path("code").asInt(0));
+                    JsonNode lrc = response.path("lrc");
+                    JsonNode tlyric = response.path("tlyric");
+                    Lyric main = new Lyric(lrc.path("version").asInt(0), lrc.path("lyric").asText(""));
+                    Lyric trans = new Lyric(tlyric.path("version").asInt(0), tlyric.path("lyric").asText(""));
+                    info.setLrc(main);
+                    info.setTlyric(trans);
+                    return info;
+                })
+                .exceptionally(e -> {
+                    plugin.getLogger().warning("Fetch lyric failed: " + ApiClient.unwrap(e).getMessage());
+                    return LyricInfo.NONE;
+                });
     }
 
     private Profile parseProfile(JsonNode node) {
@@ -621,6 +1002,59 @@ public class MusicPlayerService {
         return detail;
     }
     
+    /**
+     * Start of the current track on {@link System#nanoTime()}, immune to wall-clock adjustments.
+     */
+    private record PlaybackTimeline(long musicId, int durationMillis, long startNanos) {
+        private static final PlaybackTimeline IDLE = new PlaybackTimeline(0L, 0, System.nanoTime());
+
+        private long positionMillis() {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            return Math.max(0L, Math.min(elapsed, durationMillis));
+        }
+    }
+    
+    /**
+     * Immutable copy of the queue at a given version, plus the delta that produced it.
+     * Frames are encoded on first use, outside the queue lock, and reused by every send
+     * until the next mutation replaces the snapshot.
+     */
+    private class QueueSnapshot {
+        private final long version;
+        private final Queue<MusicDetail> items;
+        private final QueueDelta delta;
+        private EncodedFrame frame;
+        private EncodedFrame snapshotUpdateFrame;
+        private EncodedFrame deltaUpdateFrame;
+        
+        private QueueSnapshot(long version, Queue<MusicDetail> items, QueueDelta delta) {
+            this.version = version;
+            this.items = items;
+            this.delta = delta;
+        }
+        
+        private synchronized EncodedFrame frame() {
+            if (frame == null) {
+                frame = plugin.getChannelHandler().encodeRefreshMusicQueue(items);
+            }
+            return frame;
+        }
+        
+        private synchronized EncodedFrame snapshotUpdateFrame() {
+            if (snapshotUpdateFrame == null) {
+                snapshotUpdateFrame = plugin.getChannelHandler().encodeQueueSnapshotUpdate(version, items);
+            }
+            return snapshotUpdateFrame;
+        }
+        
+        private synchronized EncodedFrame deltaUpdateFrame() {
+            if (deltaUpdateFrame == null) {
+                deltaUpdateFrame = plugin.getChannelHandler().encodeQueueDeltaUpdate(version, delta);
+            }
+            return deltaUpdateFrame;
+        }
+    }
+    
     /**
      * Tracks vote information for current song.
      */
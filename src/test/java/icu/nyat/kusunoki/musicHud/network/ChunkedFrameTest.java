@@ -0,0 +1,69 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedFrameTest {
+
+    @Test
+    void partsMatchTheChunkLayout() {
+        EncodedFrame frame = frame(2500);
+        List<EncodedFrame> parts = ChannelHandler.split(frame, 42L, 1000);
+
+        assertEquals(3, parts.size());
+        String channel = PacketType.REFRESH_MUSIC_QUEUE.getChannelName();
+        for (int i = 0; i < parts.size(); i++) {
+            int offset = i * 1000;
+            int length = Math.min(1000, frame.length() - offset);
+            byte[] expected = new LegacyLayout().int64(42L).string(channel).varInt(i).varInt(parts.size()).varInt(length)
+                    .raw(frame.data(), offset, length).toFrame();
+            assertArrayEquals(expected, parts.get(i).data(), "part " + i);
+        }
+    }
+
+    @Test
+    void partsReassembleToTheFrame() {
+        for (int size : new int[]{1, 999, 1000, 1001, 64_000}) {
+            EncodedFrame frame = frame(size);
+            List<EncodedFrame> parts = ChannelHandler.split(frame, 7L, 1000);
+            assertEquals((size + 999) / 1000, parts.size());
+
+            ByteArrayOutputStream reassembled = new ByteArrayOutputStream();
+            for (int i = 0; i < parts.size(); i++) {
+                EncodedFrame part = parts.get(i);
+                assertEquals(PacketType.CHUNKED_FRAME, part.getType());
+                assertEquals(PacketType.REFRESH_MUSIC_QUEUE, part.getPayloadType());
+                assertTrue(part.isChunkPart());
+                assertEquals(i == 0, part.supersedesPending());
+
+                ByteBuf buf = PacketCodecs.fromByteArray(part.data());
+                try {
+                    assertTrue(PacketCodecs.stripLengthPrefix(buf));
+                    assertEquals(7L, PacketCodecs.readLong(buf));
+                    assertEquals(PacketType.REFRESH_MUSIC_QUEUE.getChannelName(), PacketCodecs.readString(buf));
+                    assertEquals(i, PacketCodecs.readVarInt(buf));
+                    assertEquals(parts.size(), PacketCodecs.readVarInt(buf));
+                    byte[] bytes = new byte[PacketCodecs.readVarInt(buf)];
+                    buf.readBytes(bytes);
+                    assertFalse(buf.isReadable());
+                    reassembled.writeBytes(bytes);
+                } finally {
+                    buf.release();
+                }
+            }
+            assertArrayEquals(frame.data(), reassembled.toByteArray(), "frame of " + size + " bytes");
+        }
+    }
+
+    private static EncodedFrame frame(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return new EncodedFrame(PacketType.REFRESH_MUSIC_QUEUE, data);
+    }
+}
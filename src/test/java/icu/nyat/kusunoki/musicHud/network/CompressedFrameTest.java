@@ -0,0 +1,84 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import icu.nyat.kusunoki.musicHud.beans.MusicDetail;
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedFrameTest {
+
+    @Test
+    void wrapperMatchesTheCompressedLayout() {
+        EncodedFrame frame = queueFrame();
+        byte[] deflated = deflate(frame.data());
+        EncodedFrame wrapper = FrameCompressor.wrap(frame, deflated, deflated.length);
+
+        byte[] expected = new LegacyLayout().string(PacketType.REFRESH_MUSIC_QUEUE.getChannelName())
+                .int8(PacketCodecs.COMPRESSION_DEFLATE).varInt(frame.length()).varInt(deflated.length).raw(deflated)
+                .toFrame();
+        assertArrayEquals(expected, wrapper.data());
+        assertEquals(PacketType.COMPRESSED_FRAME, wrapper.getType());
+        assertEquals(PacketType.REFRESH_MUSIC_QUEUE, wrapper.getPayloadType());
+        assertTrue(wrapper.length() < frame.length());
+    }
+
+    @Test
+    void wrapperInflatesToTheFrame() throws DataFormatException {
+        EncodedFrame frame = queueFrame();
+        byte[] deflated = deflate(frame.data());
+        EncodedFrame wrapper = FrameCompressor.wrap(frame, deflated, deflated.length);
+
+        ByteBuf buf = PacketCodecs.fromByteArray(wrapper.data());
+        byte[] inflated;
+        byte[] compressed;
+        try {
+            assertTrue(PacketCodecs.stripLengthPrefix(buf));
+            assertEquals(PacketType.REFRESH_MUSIC_QUEUE.getChannelName(), PacketCodecs.readString(buf));
+            assertEquals(PacketCodecs.COMPRESSION_DEFLATE, buf.readByte());
+            inflated = new byte[PacketCodecs.readVarInt(buf)];
+            compressed = new byte[PacketCodecs.readVarInt(buf)];
+            buf.readBytes(compressed);
+            assertFalse(buf.isReadable());
+        } finally {
+            buf.release();
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            assertEquals(inflated.length, inflater.inflate(inflated));
+            assertTrue(inflater.finished());
+        } finally {
+            inflater.end();
+        }
+        assertArrayEquals(frame.data(), inflated);
+    }
+
+    /**
+     * A full REFRESH_MUSIC_QUEUE frame, which repeats enough to compress well.
+     */
+    private static EncodedFrame queueFrame() {
+        List<MusicDetail> queue = List.of(WireFixtures.track(1, 40), WireFixtures.track(2, 40), WireFixtures.track(3, 40));
+        return new EncodedFrame(PacketType.REFRESH_MUSIC_QUEUE, new LegacyLayout().musicDetailList(queue, true).toFrame());
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] out = new byte[data.length];
+            int length = deflater.deflate(out);
+            assertTrue(deflater.finished());
+            return Arrays.copyOf(out, length);
+        } finally {
+            deflater.end();
+        }
+    }
+}
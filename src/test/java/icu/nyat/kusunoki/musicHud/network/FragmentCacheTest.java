@@ -0,0 +1,49 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import icu.nyat.kusunoki.musicHud.beans.Lyric;
+import icu.nyat.kusunoki.musicHud.beans.LyricInfo;
+import icu.nyat.kusunoki.musicHud.beans.MusicDetail;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cached fragments must never outlive a change to the bean they were encoded from.
+ */
+class FragmentCacheTest {
+
+    @Test
+    void resourceChangedInPlaceIsEncodedAgain() {
+        MusicDetail track = WireFixtures.track(21, 5);
+        encodeTwice(track);
+
+        track.getMusicResourceInfo().setUrl("http://m701.music.126.net/renewed.flac");
+        assertArrayEquals(new LegacyLayout().musicDetail(track, true).toByteArray(), encodeTwice(track));
+
+        track.getMusicResourceInfo().setLyricInfo(new LyricInfo(new Lyric(4, "[00:00.00]new\n"), Lyric.NONE));
+        assertArrayEquals(new LegacyLayout().musicDetail(track, true).toByteArray(), encodeTwice(track));
+    }
+
+    @Test
+    void detailChangedInPlaceIsEncodedAgain() {
+        MusicDetail track = WireFixtures.track(22, 5);
+        encodeTwice(track);
+
+        track.setName("renamed");
+        track.setDurationMillis(1);
+        assertArrayEquals(new LegacyLayout().musicDetail(track, false).toByteArray(),
+                GeneratedCodecLayoutTest.encode(buf -> PacketCodecs.writeMusicDetail(buf, track, false)));
+        assertArrayEquals(new LegacyLayout().musicDetail(track, true).toByteArray(), encodeTwice(track));
+    }
+
+    /**
+     * Encode a track twice, so the second one is served from the cache, and check both agree.
+     */
+    private static byte[] encodeTwice(MusicDetail track) {
+        byte[] first = GeneratedCodecLayoutTest.encode(buf -> PacketCodecs.writeMusicDetail(buf, track));
+        byte[] second = GeneratedCodecLayoutTest.encode(buf -> PacketCodecs.writeMusicDetail(buf, track));
+        assertArrayEquals(first, second);
+        assertEquals(first.length, PacketCodecs.sizeOfMusicDetail(track));
+        return second;
+    }
+}
@@ -0,0 +1,140 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import icu.nyat.kusunoki.musicHud.beans.MusicDetail;
+import icu.nyat.kusunoki.musicHud.beans.Playlist;
+import icu.nyat.kusunoki.musicHud.beans.user.Profile;
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The generated codecs have to write exactly what the hand-written ones did, since released
+ * clients parse it, and their sizeOf methods have to match what they write.
+ */
+class GeneratedCodecLayoutTest {
+
+    @Test
+    void musicDetailMatchesLegacyLayout() {
+        MusicDetail track = WireFixtures.track(1, 20);
+        for (boolean withLyrics : new boolean[]{true, false}) {
+            byte[] expected = new LegacyLayout().musicDetail(track, withLyrics).toByteArray();
+            assertArrayEquals(expected, encode(buf -> PacketCodecs.writeMusicDetail(buf, track, withLyrics)));
+            // Written again from the fragment cache
+            assertArrayEquals(expected, encode(buf -> PacketCodecs.writeMusicDetail(buf, track, withLyrics)));
+            assertEquals(expected.length, PacketCodecs.sizeOfMusicDetail(track, withLyrics));
+        }
+    }
+
+    @Test
+    void uncacheableMusicDetailMatchesLegacyLayout() {
+        MusicDetail entry = WireFixtures.playlistEntry(2);
+        byte[] expected = new LegacyLayout().musicDetail(entry, true).toByteArray();
+        assertArrayEquals(expected, encode(buf -> PacketCodecs.writeMusicDetail(buf, entry)));
+        assertEquals(expected.length, PacketCodecs.sizeOfMusicDetail(entry));
+    }
+
+    @Test
+    void musicDetailListMatchesLegacyLayout() {
+        List<MusicDetail> tracks = List.of(WireFixtures.track(3, 5), WireFixtures.playlistEntry(4), WireFixtures.track(5, 0));
+        byte[] expected = new LegacyLayout().musicDetailList(tracks, false).toByteArray();
+        assertArrayEquals(expected, encode(buf -> PacketCodecs.writeMusicDetailList(buf, tracks, false)));
+        assertEquals(expected.length, PacketCodecs.sizeOfMusicDetails(tracks, false));
+    }
+
+    @Test
+    void playlistMatchesLegacyLayout() {
+        Playlist playlist = WireFixtures.playlist(3);
+        byte[] expected = new LegacyLayout().playlist(playlist).toByteArray();
+        assertArrayEquals(expected, encode(buf -> PacketCodecs.writePlaylist(buf, playlist)));
+        assertEquals(expected.length, PacketCodecs.sizeOfPlaylist(playlist));
+    }
+
+    @Test
+    void profileMatchesLegacyLayout() {
+        Profile profile = new Profile("昵称", "http://p1.music.126.net/avatar.jpg", null, 123456789L);
+        byte[] expected = new LegacyLayout().profile(profile).toByteArray();
+        assertArrayEquals(expected, encode(buf -> PacketCodecs.writeProfile(buf, profile)));
+        assertEquals(expected.length, PacketCodecs.sizeOfProfile(profile));
+    }
+
+    @Test
+    void musicDetailRoundTrips() {
+        MusicDetail track = WireFixtures.track(6, 10);
+        byte[] encoded = encode(buf -> PacketCodecs.writeMusicDetail(buf, track));
+        MusicDetail read = decode(encoded, PacketCodecs::readMusicDetail);
+
+        assertEquals(track.getName(), read.getName());
+        assertEquals(track.getId(), read.getId());
+        assertEquals(track.getArtists(), read.getArtists());
+        assertEquals(track.getAlbum(), read.getAlbum());
+        assertEquals(track.getPusherInfo(), read.getPusherInfo());
+        assertEquals(track.getMusicResourceInfo().getUrl(), read.getMusicResourceInfo().getUrl());
+        assertEquals(track.getMusicResourceInfo().getLyricInfo().getLrc().getLyric(),
+                read.getMusicResourceInfo().getLyricInfo().getLrc().getLyric());
+        assertArrayEquals(encoded, encode(buf -> PacketCodecs.writeMusicDetail(buf, read)));
+    }
+
+    @Test
+    void leanMusicDetailReadsBackWithoutLyrics() {
+        MusicDetail track = WireFixtures.track(7, 10);
+        MusicDetail read = decode(encode(buf -> PacketCodecs.writeMusicDetail(buf, track, false)), PacketCodecs::readMusicDetail);
+
+        assertEquals(track.getMusicResourceInfo().getUrl(), read.getMusicResourceInfo().getUrl());
+        assertEquals(-1, read.getMusicResourceInfo().getLyricInfo().getLrc().getVersion());
+        assertEquals("", read.getMusicResourceInfo().getLyricInfo().getLrc().getLyric());
+        assertEquals("", read.getMusicResourceInfo().getLyricInfo().getTlyric().getLyric());
+    }
+
+    @Test
+    void playlistRoundTrips() {
+        Playlist playlist = WireFixtures.playlist(3);
+        byte[] encoded = encode(buf -> PacketCodecs.writePlaylist(buf, playlist));
+        Playlist read = decode(encoded, PacketCodecs::readPlaylist);
+
+        assertEquals(playlist.getName(), read.getName());
+        assertEquals(playlist.getCreator().getNickname(), read.getCreator().getNickname());
+        assertEquals(playlist.getTracks(), read.getTracks());
+        assertArrayEquals(encoded, encode(buf -> PacketCodecs.writePlaylist(buf, read)));
+    }
+
+    @Test
+    void oversizedLyricIsCutToTheStringLimit() {
+        // About 40 KB of lyrics per track, beyond the 32767 byte string limit
+        MusicDetail track = WireFixtures.track(8, 2000);
+        String lyric = track.getMusicResourceInfo().getLyricInfo().getLrc().getLyric();
+        byte[] expected = new LegacyLayout().musicDetail(track, true).toByteArray();
+        byte[] encoded = encode(buf -> PacketCodecs.writeMusicDetail(buf, track));
+
+        assertArrayEquals(expected, encoded);
+        assertEquals(expected.length, PacketCodecs.sizeOfMusicDetail(track));
+        String read = decode(encoded, PacketCodecs::readMusicDetail).getMusicResourceInfo().getLyricInfo().getLrc().getLyric();
+        assertEquals(PacketCodecs.fitString(lyric), read);
+        assertTrue(read.length() < lyric.length());
+    }
+
+    static byte[] encode(Consumer<ByteBuf> writer) {
+        ByteBuf buf = PacketCodecs.createBuffer(256);
+        try {
+            writer.accept(buf);
+            return PacketCodecs.toByteArray(buf);
+        } finally {
+            buf.release();
+        }
+    }
+
+    static <T> T decode(byte[] bytes, Function<ByteBuf, T> reader) {
+        ByteBuf buf = PacketCodecs.fromByteArray(bytes);
+        try {
+            T value = reader.apply(buf);
+            assertFalse(buf.isReadable(), "bytes left after decoding");
+            return value;
+        } finally {
+            buf.release();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import icu.nyat.kusunoki.musicHud.beans.*;
+import icu.nyat.kusunoki.musicHud.beans.user.Profile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Reference writer for the byte layout clients already parse, as the hand-written codecs
+ * produced it before they were generated. Written against java.io only, so it shares no
+ * code with {@link PacketCodecs} apart from {@link PacketCodecs#fitString}.
+ */
+final class LegacyLayout {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+
+    byte[] toByteArray() {
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The written bytes behind a VarInt length prefix, as every outbound frame is sent.
+     */
+    byte[] toFrame() {
+        byte[] body = toByteArray();
+        return new LegacyLayout().varInt(body.length).raw(body).toByteArray();
+    }
+
+    LegacyLayout varInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes.write(value);
+        return this;
+    }
+
+    LegacyLayout int32(int value) {
+        return write(out -> out.writeInt(value));
+    }
+
+    LegacyLayout int64(long value) {
+        return write(out -> out.writeLong(value));
+    }
+
+    LegacyLayout int8(int value) {
+        bytes.write(value);
+        return this;
+    }
+
+    LegacyLayout raw(byte[] data) {
+        return raw(data, 0, data.length);
+    }
+
+    LegacyLayout raw(byte[] data, int offset, int length) {
+        bytes.write(data, offset, length);
+        return this;
+    }
+
+    LegacyLayout string(String str) {
+        byte[] utf8 = (str == null ? "" : str).getBytes(StandardCharsets.UTF_8);
+        return varInt(utf8.length).raw(utf8);
+    }
+
+    LegacyLayout stringList(List<String> list) {
+        int32(list.size());
+        list.forEach(this::string);
+        return this;
+    }
+
+    LegacyLayout profile(Profile profile) {
+        return string(profile.getNickname()).string(profile.getAvatarUrl()).string(profile.getBackgroundUrl())
+                .int64(profile.getUserId());
+    }
+
+    LegacyLayout lyric(Lyric lyric) {
+        return int32(lyric.getVersion()).string(PacketCodecs.fitString(lyric.getLyric()));
+    }
+
+    LegacyLayout resource(MusicResourceInfo info, boolean withLyrics) {
+        LyricInfo lyrics = withLyrics ? info.getLyricInfo() : LyricInfo.NONE;
+        return int64(info.getId()).string(info.getUrl()).int32(info.getBitrate()).int64(info.getSize())
+                .varInt(info.getType().ordinal()).string(info.getMd5()).varInt(info.getFee().ordinal())
+                .int32(info.getTime()).lyric(lyrics.getLrc()).lyric(lyrics.getTlyric());
+    }
+
+    LegacyLayout musicDetail(MusicDetail detail, boolean withLyrics) {
+        string(detail.getName()).int64(detail.getId());
+        int32(detail.getArtists().size());
+        for (Artist artist : detail.getArtists()) {
+            int64(artist.getId()).string(artist.getName());
+        }
+        stringList(detail.getAlias());
+        AlbumInfo album = detail.getAlbum();
+        int64(album.getId()).string(album.getName()).string(album.getPicUrl()).int64(album.getPicSize());
+        int32(detail.getDurationMillis());
+        stringList(detail.getTranslations());
+        PusherInfo pusher = detail.getPusherInfo();
+        int64(pusher.uid()).int64(pusher.playerUUID().getMostSignificantBits())
+                .int64(pusher.playerUUID().getLeastSignificantBits()).string(pusher.playerName());
+        return resource(detail.getMusicResourceInfo(), withLyrics);
+    }
+
+    LegacyLayout musicDetailList(List<MusicDetail> details, boolean withLyrics) {
+        int32(details.size());
+        details.forEach(detail -> musicDetail(detail, withLyrics));
+        return this;
+    }
+
+    LegacyLayout playlist(Playlist playlist) {
+        return int64(playlist.getId()).string(playlist.getName()).int64(playlist.getCoverImgId())
+                .string(playlist.getCoverImgIdStr()).string(playlist.getCoverImgUrl()).profile(playlist.getCreator())
+                .musicDetailList(playlist.getTracks(), true);
+    }
+
+    private LegacyLayout write(Write write) {
+        try {
+            write.to(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    private interface Write {
+        void to(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,90 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundDispatcherTest {
+    private final OutboundDispatcher dispatcher = new OutboundDispatcher(null, (player, frame) -> {
+    });
+    private final OutboundDispatcher.PlayerOutbox outbox = dispatcher.new PlayerOutbox(null);
+
+    @Test
+    void chunkedSwitchMusicGoesOutWhileLagging() {
+        EncodedFrame search = frame(PacketType.SEARCH_RESPONSE, 100);
+        List<EncodedFrame> queueParts = ChannelHandler.split(frame(PacketType.REFRESH_MUSIC_QUEUE, 2500), 1L, 1000);
+        List<EncodedFrame> switchParts = ChannelHandler.split(frame(PacketType.SWITCH_MUSIC, 2500), 2L, 1000);
+        offer(search);
+        queueParts.forEach(this::offer);
+        switchParts.forEach(this::offer);
+
+        assertEquals(switchParts, drain(true));
+        assertEquals(List.of(), drain(true));
+        List<EncodedFrame> deferred = new ArrayList<>(List.of(search));
+        deferred.addAll(queueParts);
+        assertEquals(deferred, drain(false));
+    }
+
+    @Test
+    void pendingLimitKeepsUrgentParts() {
+        List<EncodedFrame> switchParts = ChannelHandler.split(frame(PacketType.SWITCH_MUSIC, 2500), 3L, 1000);
+        switchParts.forEach(part -> outbox.offer(part, 0));
+        outbox.offer(frame(PacketType.SEARCH_RESPONSE, 100), 0);
+
+        assertEquals(switchParts, drain(false));
+    }
+
+    @Test
+    void chunkedSnapshotDropsOlderQueueStateAndHoldsNewer() {
+        EncodedFrame olderSnapshot = frame(PacketType.REFRESH_MUSIC_QUEUE, 100);
+        EncodedFrame olderDelta = new EncodedFrame(PacketType.MUSIC_QUEUE_UPDATE, new byte[10], false);
+        List<EncodedFrame> snapshotParts = ChannelHandler.split(frame(PacketType.REFRESH_MUSIC_QUEUE, 2500), 4L, 1000);
+        EncodedFrame newerDelta = new EncodedFrame(PacketType.MUSIC_QUEUE_UPDATE, new byte[20], false);
+        offer(olderSnapshot);
+        offer(olderDelta);
+        snapshotParts.forEach(this::offer);
+        offer(newerDelta);
+
+        List<EncodedFrame> expected = new ArrayList<>(snapshotParts);
+        expected.add(newerDelta);
+        assertEquals(expected, drain(false));
+        assertEquals(2, dispatcher.getCoalescedCount());
+        assertEquals(0, dispatcher.getPendingCount());
+    }
+
+    @Test
+    void laterPartsOfASnapshotKeepQueueStateQueuedBetweenThem() {
+        List<EncodedFrame> snapshotParts = ChannelHandler.split(frame(PacketType.REFRESH_MUSIC_QUEUE, 2500), 5L, 1000);
+        EncodedFrame delta = new EncodedFrame(PacketType.MUSIC_QUEUE_UPDATE, new byte[10], false);
+        offer(snapshotParts.get(0));
+        offer(delta);
+        snapshotParts.subList(1, snapshotParts.size()).forEach(this::offer);
+
+        List<EncodedFrame> expected = new ArrayList<>(snapshotParts);
+        expected.add(delta);
+        assertEquals(expected, drain(false));
+    }
+
+    private void offer(EncodedFrame frame) {
+        outbox.offer(frame, Long.MAX_VALUE);
+    }
+
+    private List<EncodedFrame> drain(boolean lagging) {
+        List<EncodedFrame> sent = new ArrayList<>();
+        EncodedFrame frame;
+        while ((frame = outbox.poll(Long.MAX_VALUE, lagging)) != null) {
+            sent.add(frame);
+        }
+        return sent;
+    }
+
+    static EncodedFrame frame(PacketType type, int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return new EncodedFrame(type, data);
+    }
+}
@@ -0,0 +1,120 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import icu.nyat.kusunoki.musicHud.beans.MusicDetail;
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class PacketCodecsTest {
+    private static final int MAX_STRING_SIZE = 32767;
+
+    @Test
+    void framePrefixMatchesBodyLength() {
+        // One, two, three and four byte VarInt prefixes
+        for (int length : new int[]{0, 127, 128, 16383, 16384, 2_097_152}) {
+            byte[] body = new byte[length];
+            Arrays.fill(body, (byte) length);
+            ByteBuf buf = PacketCodecs.createFrameBuffer(length);
+            try {
+                buf.writeBytes(body);
+                assertArrayEquals(new LegacyLayout().raw(body).toFrame(), PacketCodecs.toFramedByteArray(buf), "body of " + length + " bytes");
+            } finally {
+                buf.release();
+            }
+        }
+    }
+
+    @Test
+    void presizedFrameBufferNeverGrows() {
+        MusicDetail track = WireFixtures.track(1, 50);
+        int size = PacketCodecs.sizeOfMusicDetail(track);
+        ByteBuf buf = PacketCodecs.createFrameBuffer(size);
+        try {
+            byte[] backing = buf.array();
+            int capacity = buf.capacity();
+            PacketCodecs.writeMusicDetail(buf, track);
+
+            assertSame(backing, buf.array(), "buffer was reallocated while writing");
+            assertEquals(capacity, buf.capacity());
+            assertArrayEquals(new LegacyLayout().musicDetail(track, true).toFrame(), PacketCodecs.toFramedByteArray(buf));
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    void framingCopiesTheBodyOnce() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        int bodySize = 4 << 20;
+        ByteBuf buf = PacketCodecs.createFrameBuffer(bodySize);
+        try {
+            buf.writeZero(bodySize);
+            // Load and link everything involved before measuring
+            PacketCodecs.toFramedByteArray(buf);
+            threads.getCurrentThreadAllocatedBytes();
+
+            long before = threads.getCurrentThreadAllocatedBytes();
+            byte[] frame = PacketCodecs.toFramedByteArray(buf);
+            long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+            assertEquals(PacketCodecs.varIntSize(bodySize) + bodySize, frame.length);
+            // The returned array plus change; a second copy of the body would double it
+            assertTrue(allocated < frame.length + (64 << 10), "allocated " + allocated + " bytes for a " + frame.length + " byte frame");
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    void fitStringKeepsStringsWithinTheLimit() {
+        String str = "短い歌詞\n".repeat(100);
+        assertSame(str, PacketCodecs.fitString(str));
+        assertNull(PacketCodecs.fitString(null));
+        String exact = "a".repeat(MAX_STRING_SIZE);
+        assertSame(exact, PacketCodecs.fitString(exact));
+    }
+
+    @Test
+    void fitStringCutsAtTheLastLineBreak() {
+        String lrc = WireFixtures.lrc(3000, "あいうえお");
+        String fitted = PacketCodecs.fitString(lrc);
+
+        assertTrue(lrc.startsWith(fitted));
+        assertTrue(fitted.endsWith("\n"));
+        int bytes = utf8Length(fitted);
+        assertTrue(bytes <= MAX_STRING_SIZE);
+        // The next line would not have fit
+        String nextLine = lrc.substring(fitted.length(), lrc.indexOf('\n', fitted.length()) + 1);
+        assertTrue(bytes + utf8Length(nextLine) > MAX_STRING_SIZE);
+    }
+
+    @Test
+    void fitStringCutsAtACharacterBoundaryWithoutLineBreaks() {
+        String cjk = "歌".repeat(20000);
+        String fitted = PacketCodecs.fitString(cjk);
+        assertEquals(MAX_STRING_SIZE / 3, fitted.length());
+        assertTrue(cjk.startsWith(fitted));
+    }
+
+    @Test
+    void fitStringNeverSplitsSurrogatePairs() {
+        String emoji = "a" + "😀".repeat(10000);
+        String fitted = PacketCodecs.fitString(emoji);
+
+        assertTrue(emoji.startsWith(fitted));
+        assertFalse(Character.isHighSurrogate(fitted.charAt(fitted.length() - 1)));
+        int bytes = utf8Length(fitted);
+        assertTrue(bytes <= MAX_STRING_SIZE && bytes > MAX_STRING_SIZE - 4);
+    }
+
+    private static int utf8Length(String str) {
+        return str.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,60 @@
+package icu.nyat.kusunoki.musicHud.network;
+
+import icu.nyat.kusunoki.musicHud.beans.*;
+import icu.nyat.kusunoki.musicHud.beans.user.Profile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Small deterministic beans covering every field of the wire layout.
+ */
+final class WireFixtures {
+    private WireFixtures() {
+    }
+
+    /**
+     * A playable track whose lyrics have {@code lyricLines} lines, with multi-byte text in every string.
+     */
+    static MusicDetail track(long id, int lyricLines) {
+        LyricInfo lyrics = new LyricInfo(new Lyric(3, lrc(lyricLines, "あいうえお")), new Lyric(1, lrc(lyricLines, "春夏秋冬")));
+        MusicResourceInfo resource = new MusicResourceInfo(id, "http://m701.music.126.net/" + id + ".flac", 999000,
+                34_567_890L, FormatType.FLAC, "0123456789abcdef0123456789abcdef", Fee.VIP, 240_000, lyrics);
+        return new MusicDetail("歌名 " + id, id,
+                List.of(new Artist(id * 7, "歌手"), new Artist(id * 11, "Singer 😀")),
+                List.of("别名"),
+                new AlbumInfo(id * 13, "专辑", "http://p1.music.126.net/" + id + ".jpg", 109951163L),
+                240_000,
+                List.of("Translation"),
+                new PusherInfo(1L + id, new UUID(id, -id), "Player" + id),
+                resource);
+    }
+
+    /**
+     * A playlist entry as returned by the API: no resource, no lyrics and empty lists.
+     */
+    static MusicDetail playlistEntry(long id) {
+        MusicDetail detail = new MusicDetail();
+        detail.setId(id);
+        detail.setName("Entry " + id);
+        return detail;
+    }
+
+    static Playlist playlist(int tracks) {
+        List<MusicDetail> entries = new ArrayList<>(tracks);
+        for (int i = 0; i < tracks; i++) {
+            entries.add(playlistEntry(100 + i));
+        }
+        return new Playlist(42L, "歌单", 109951163L, "109951163", "http://p1.music.126.net/cover.jpg",
+                new Profile("创建者", "http://p1.music.126.net/avatar.jpg", "", 7L), entries);
+    }
+
+    static String lrc(int lines, String text) {
+        StringBuilder lrc = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            lrc.append(String.format("[%02d:%02d.%02d]", i / 60, i % 60, i % 100)).append(text).append(i).append('\n');
+        }
+        return lrc.toString();
+    }
+}